@@ -0,0 +1,92 @@
+package org.societies.database;
+
+import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.jooq.impl.SQLDataType;
+import org.jooq.tools.jdbc.MockDataProvider;
+import org.jooq.tools.jdbc.MockExecuteContext;
+import org.jooq.tools.jdbc.MockResult;
+import org.societies.database.data.queue.Data;
+
+import java.sql.SQLException;
+import java.util.UUID;
+
+import static org.jooq.impl.DSL.fieldByName;
+import static org.jooq.impl.DSL.tableByName;
+
+/**
+ * Represents the shared fixtures of the benchmarks
+ */
+public final class Benchmarks {
+
+    public static final QueryKey<Query> INSERT_KEY = new QueryKey<Query>();
+
+    private static final MockResult[] NO_RESULTS = new MockResult[0];
+
+    private Benchmarks() {
+    }
+
+    /**
+     * @return A context, which executes every statement without doing anything
+     */
+    public static DSLContext mockedContext() {
+        return DatabaseMock.mockedDSLContext(new MockDataProvider() {
+            @Override
+            public MockResult[] execute(MockExecuteContext ctx) throws SQLException {
+                return NO_RESULTS;
+            }
+        });
+    }
+
+    public static QueryProvider queryProvider(final DSLContext context) {
+        return new QueryProvider(new DSLProvider() {
+            @Override
+            public DSLContext getDSLContext() {
+                return context;
+            }
+        }) {
+            @Override
+            public void build() {
+                builder(INSERT_KEY, new QueryBuilder<Query>() {
+                    @Override
+                    public Query create(DSLContext context) {
+                        return context
+                                .insertInto(tableByName("societies"),
+                                        fieldByName(SQLDataType.BINARY.asConvertedDataType(new UUIDConverter()), "uuid"),
+                                        fieldByName(String.class, "name"))
+                                .values(DEFAULT_UUID, DEFAULT_STRING);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Represents data, which inserts a society
+     */
+    public static final class InsertData implements Data {
+
+        private final QueryProvider provider;
+        private final Object[] values;
+
+        public InsertData(QueryProvider provider, UUID uuid, String name) {
+            this.provider = provider;
+            this.values = new Object[]{uuid, name};
+        }
+
+        @Override
+        public QueryProvider getQueryProvider() {
+            return provider;
+        }
+
+        @Override
+        public QueryKey getQueryKey() {
+            return INSERT_KEY;
+        }
+
+        @Override
+        public Object[] execute() {
+            return values;
+        }
+    }
+}
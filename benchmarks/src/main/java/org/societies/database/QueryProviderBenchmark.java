@@ -0,0 +1,55 @@
+package org.societies.database;
+
+import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents a QueryProviderBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryProviderBenchmark {
+
+    private DSLContext context;
+    private QueryProvider provider;
+    private Object[] values;
+
+    @Setup
+    public void setup() {
+        context = Benchmarks.mockedContext();
+        provider = Benchmarks.queryProvider(context);
+        values = new Object[]{UUID.randomUUID(), "name"};
+    }
+
+    @Benchmark
+    public Query getQuery() {
+        return provider.getQuery(Benchmarks.INSERT_KEY);
+    }
+
+    @Benchmark
+    public CachedQuery getCachedQuery() {
+        return provider.getCachedQuery(Benchmarks.INSERT_KEY);
+    }
+
+    @Benchmark
+    public int executeCachedQuery() {
+        return provider.getCachedQuery(Benchmarks.INSERT_KEY).execute(context, values);
+    }
+}
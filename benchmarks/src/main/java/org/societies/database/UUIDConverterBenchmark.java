@@ -0,0 +1,66 @@
+package org.societies.database;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents a UUIDConverterBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UUIDConverterBenchmark {
+
+    private final UUIDConverter converter = new UUIDConverter();
+
+    private UUID uuid;
+    private byte[] bytes;
+    private final byte[] target = new byte[UUIDConverter.UUID_LENGTH];
+
+    @Setup
+    public void setup() {
+        uuid = UUID.randomUUID();
+        bytes = converter.to(uuid);
+    }
+
+    @Benchmark
+    public byte[] to() {
+        return converter.to(uuid);
+    }
+
+    @Benchmark
+    public byte[] toArray() {
+        converter.to(uuid, target, 0);
+        return target;
+    }
+
+    @Benchmark
+    public byte[] toSwapped() {
+        UUIDConverter.SWAPPED.to(uuid, target, 0);
+        return target;
+    }
+
+    @Benchmark
+    public UUID generateOrdered() {
+        return UUIDConverter.generateOrdered();
+    }
+
+    @Benchmark
+    public UUID from() {
+        return converter.from(bytes);
+    }
+}
@@ -0,0 +1,93 @@
+package org.societies.database.data;
+
+import org.jooq.DSLContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.societies.database.Benchmarks;
+import org.societies.database.DSLProvider;
+import org.societies.database.QueryProvider;
+import org.societies.database.data.queue.BackpressurePolicy;
+import org.societies.database.data.queue.Capacity;
+import org.societies.database.data.queue.Data;
+import org.societies.database.data.queue.DefaultQueue;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents a DataWorkerBenchmark
+ * <p>
+ * Measures the end-to-end throughput of producers publishing to a running worker. The capacity of the queue is
+ * bounded and blocks producers, so the throughput is limited by the worker and not by the memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataWorkerBenchmark {
+
+    private DataWorker worker;
+    private Thread thread;
+    private Data data;
+
+    @Setup
+    public void setup() {
+        final DSLContext context = Benchmarks.mockedContext();
+        QueryProvider provider = Benchmarks.queryProvider(context);
+
+        Capacity capacity = new Capacity(100000, 0, 0, 0, BackpressurePolicy.BLOCK, 1, TimeUnit.MINUTES, 0);
+
+        worker = new DataWorker(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                e.printStackTrace();
+            }
+        }, new DSLProvider() {
+            @Override
+            public DSLContext getDSLContext() {
+                return context;
+            }
+        }, new DefaultQueue(50, 50, TimeUnit.MILLISECONDS, 500, capacity));
+
+        thread = DataWorker.createDefaultThread(worker);
+        thread.start();
+
+        data = new Benchmarks.InsertData(provider, UUID.randomUUID(), "name");
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        worker.stop();
+        thread.join();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void publish1() {
+        worker.publishBatch(data);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void publish4() {
+        worker.publishBatch(data);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void publish16() {
+        worker.publishBatch(data);
+    }
+}
@@ -0,0 +1,63 @@
+package org.societies.database.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents a InboxBenchmark
+ * <p>
+ * Measures the handoff of eight producers to a single consumer, which drains the inbox like the {@link DataWorker}.
+ * The lock-free {@link MpscInbox} is compared to the lock based {@link LockingInbox}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InboxBenchmark {
+
+    @Param({"lock-free", "locking"})
+    public String inbox;
+
+    private Inbox target;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        target = inbox.equals("locking") ? new LockingInbox() : new MpscInbox();
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(8)
+    public void offer() {
+        target.offer(new Submission(Submission.BATCH, null, null));
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public int drain() {
+        int drained = 0;
+
+        while (target.poll() != null) {
+            drained++;
+        }
+
+        return drained;
+    }
+}
@@ -0,0 +1,46 @@
+package org.societies.database.data;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A lock based inbox, which is the reference for the {@link MpscInbox} in the {@link InboxBenchmark}.
+ */
+final class LockingInbox implements Inbox {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedList<Submission> submissions = new LinkedList<Submission>();
+
+    @Override
+    public void offer(Submission submission) {
+        try {
+            lock.lock();
+            submissions.offer(submission);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Nullable
+    @Override
+    public Submission poll() {
+        try {
+            lock.lock();
+            return submissions.poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        try {
+            lock.lock();
+            return submissions.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
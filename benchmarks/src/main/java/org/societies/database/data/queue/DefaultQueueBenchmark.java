@@ -0,0 +1,90 @@
+package org.societies.database.data.queue;
+
+import org.jooq.DSLContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.societies.database.Benchmarks;
+import org.societies.database.CachedQuery;
+import org.societies.database.QueryProvider;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents a DefaultQueueBenchmark
+ * <p>
+ * Every invocation publishes a whole batch, so the queue does not grow while measuring.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DefaultQueueBenchmark {
+
+    public static final int BATCH_SIZE = 50;
+
+    /** Executes nothing, so only the queue itself is measured */
+    private static final BatchStrategy NO_EXECUTION = new BatchStrategy() {
+        @Override
+        public void execute(DSLContext context, CachedQuery query, List<Object[]> rows) {
+        }
+    };
+
+    private DSLContext context;
+    private Data[] data;
+
+    private DefaultQueue queue;
+    private DefaultQueue executingQueue;
+
+    @Setup
+    public void setup() {
+        context = Benchmarks.mockedContext();
+        QueryProvider provider = Benchmarks.queryProvider(context);
+
+        data = new Data[BATCH_SIZE];
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = new Benchmarks.InsertData(provider, UUID.randomUUID(), "name" + i);
+        }
+
+        // Never flushed because of the size or the deadline, only by flushReady
+        queue = new DefaultQueue(0, 5, TimeUnit.MINUTES, Integer.MAX_VALUE);
+        queue.setBatchStrategy(NO_EXECUTION);
+
+        executingQueue = new DefaultQueue(0, 5, TimeUnit.MINUTES, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void publishBatch() {
+        for (Data d : data) {
+            queue.publishBatch(d);
+        }
+
+        queue.flushReady();
+        queue.execute(context);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void executeBatch() {
+        for (Data d : data) {
+            executingQueue.publishBatch(d);
+        }
+
+        BatchEntry entry = executingQueue.getBatchEntry(Benchmarks.INSERT_KEY);
+        entry.execute(context);
+    }
+}
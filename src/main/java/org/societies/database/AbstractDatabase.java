@@ -1,14 +1,21 @@
 package org.societies.database;
 
+import com.google.inject.Inject;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.pool.HikariPoolMXBean;
+import org.jetbrains.annotations.Nullable;
 import org.jooq.DSLContext;
 import org.jooq.SQLDialect;
 import org.jooq.conf.Settings;
 import org.jooq.conf.StatementType;
 import org.jooq.impl.DSL;
 
+import javax.management.JMX;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.concurrent.TimeUnit;
@@ -37,6 +44,12 @@ public abstract class AbstractDatabase implements Database {
     /** The DSL context, use with jOOQ stuff */
     private DSLContext dslContext;
 
+    private PoolProfile poolProfile = PoolProfile.DEFAULT;
+
+    /** The live statistics of the pool or null if they are not registered */
+    @Nullable
+    private HikariPoolMXBean poolStats;
+
     public AbstractDatabase(String dataSourceClass,
                             SQLDialect dialect) {
         this.dataSourceClass = dataSourceClass;
@@ -45,9 +58,34 @@ public abstract class AbstractDatabase implements Database {
 
     public abstract HikariConfig createConfig();
 
+    /**
+     * Sets the profile of the connection pool. It should be set before the database is initialized, a database,
+     * which was initialized already, restarts its pool.
+     *
+     * @param poolProfile The profile
+     */
+    @Inject(optional = true)
+    public void setPoolProfile(PoolProfile poolProfile) {
+        this.poolProfile = poolProfile;
+
+        if (dataSource != null) {
+            close();
+            initDatabase();
+        }
+    }
+
+    public PoolProfile getPoolProfile() {
+        return poolProfile;
+    }
+
     @Override
     public void initDatabase() {
         this.dataSource = new HikariDataSource(createConfig());
+        this.poolStats = findPoolStats(dataSource.getPoolName());
+
+        if (poolProfile.isWarmUp()) {
+            warmUp();
+        }
 
         // Create a MySQL DSL context
         Settings settings = new Settings();
@@ -55,6 +93,91 @@ public abstract class AbstractDatabase implements Database {
         dslContext = DSL.using(dataSource, dialect, settings);
     }
 
+    /**
+     * Opens and validates the minimum number of idle connections, so the first queries do not pay for the setup.
+     */
+    private void warmUp() {
+        Connection[] connections = new Connection[dataSource.getMinimumIdle()];
+        int timeout = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(poolProfile.getConnectionTimeout()));
+
+        try {
+            for (int i = 0; i < connections.length; i++) {
+                connections[i] = dataSource.getConnection();
+
+                if (!connections[i].isValid(timeout)) {
+                    throw new SQLException("The connection " + i + " is not valid!");
+                }
+            }
+        } catch (SQLException e) {
+            close(connections);
+            dataSource.shutdown();
+            dataSource = null;
+            throw new RuntimeException("Failed to warm up the connection pool!", e);
+        }
+
+        close(connections);
+    }
+
+    private static void close(Connection[] connections) {
+        for (Connection connection : connections) {
+            if (connection == null) {
+                continue;
+            }
+
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    @Nullable
+    private static HikariPoolMXBean findPoolStats(String poolName) {
+        try {
+            ObjectName name = new ObjectName("com.zaxxer.hikari:type=Pool (" + poolName + ")");
+
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                return null;
+            }
+
+            return JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(), name, HikariPoolMXBean.class);
+        } catch (MalformedObjectNameException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The number of connections in use or -1 if the statistics of the pool are not registered
+     */
+    public int getActiveConnections() {
+        HikariPoolMXBean poolStats = this.poolStats;
+        return poolStats == null ? -1 : poolStats.getActiveConnections();
+    }
+
+    /**
+     * @return The number of idle connections or -1 if the statistics of the pool are not registered
+     */
+    public int getIdleConnections() {
+        HikariPoolMXBean poolStats = this.poolStats;
+        return poolStats == null ? -1 : poolStats.getIdleConnections();
+    }
+
+    /**
+     * @return The number of open connections or -1 if the statistics of the pool are not registered
+     */
+    public int getTotalConnections() {
+        HikariPoolMXBean poolStats = this.poolStats;
+        return poolStats == null ? -1 : poolStats.getTotalConnections();
+    }
+
+    /**
+     * @return The number of threads waiting for a connection or -1 if the statistics of the pool are not registered
+     */
+    public int getWaitingThreads() {
+        HikariPoolMXBean poolStats = this.poolStats;
+        return poolStats == null ? -1 : poolStats.getThreadsAwaitingConnection();
+    }
+
     /**
      * Returns a connection from the pool
      *
@@ -87,6 +210,10 @@ public abstract class AbstractDatabase implements Database {
             throw new RuntimeException("Failed to close the connection pool!", e);
         }
 
+        dataSource = null;
+        dslContext = null;
+        poolStats = null;
+
         return true;
     }
 
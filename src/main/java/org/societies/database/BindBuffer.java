@@ -0,0 +1,261 @@
+package org.societies.database;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Represents a reusable, column oriented buffer of bind values for several rows of a query.
+ * <p>
+ * Primitive values are stored unboxed, either in a heap array or off-heap in a direct buffer. References like
+ * strings, byte arrays and UUIDs are always held on the heap. Rows are written by {@link #nextRow()} followed by the
+ * values of the row in order, {@link #addRow(Object[])} adapts rows of objects.
+ * Clearing the buffer keeps its storage, so a buffer which is reused for every batch stops allocating once it
+ * reached the size of the largest batch.
+ * <p>
+ * This is not thread safe.
+ */
+public final class BindBuffer implements BindSink {
+
+    static final byte DEFAULT = 0;
+    static final byte NULL = 1;
+    static final byte LONG = 2;
+    static final byte INT = 3;
+    static final byte DOUBLE = 4;
+    static final byte OBJECT = 5;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final int columns;
+    private final boolean direct;
+
+    private int capacity;
+
+    /** The type of every value, indexed by column * capacity + row */
+    private byte[] types;
+    private LongBuffer primitives;
+    private Object[] references;
+
+    private int rows;
+    private int column;
+
+    /**
+     * @param columns The number of bind parameters of a row
+     * @param direct  Whether the primitive values are stored off-heap
+     */
+    public BindBuffer(int columns, boolean direct) {
+        this(columns, DEFAULT_CAPACITY, direct);
+    }
+
+    /**
+     * @param columns  The number of bind parameters of a row
+     * @param capacity The initial number of rows
+     * @param direct   Whether the primitive values are stored off-heap
+     */
+    public BindBuffer(int columns, int capacity, boolean direct) {
+        if (columns < 0 || capacity < 1) {
+            throw new IllegalArgumentException("The columns must not be negative and the capacity must be positive!");
+        }
+
+        this.columns = columns;
+        this.direct = direct;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        int size = Math.max(1, columns * capacity);
+
+        byte[] types = new byte[size];
+        Object[] references = new Object[size];
+        LongBuffer primitives = direct
+                ? ByteBuffer.allocateDirect(size * 8).order(ByteOrder.nativeOrder()).asLongBuffer()
+                : LongBuffer.allocate(size);
+
+        // Copy every column to its new offset
+        for (int c = 0; c < columns && this.types != null; c++) {
+            int from = c * this.capacity;
+            int to = c * capacity;
+
+            System.arraycopy(this.types, from, types, to, rows);
+            System.arraycopy(this.references, from, references, to, rows);
+
+            for (int row = 0; row < rows; row++) {
+                primitives.put(to + row, this.primitives.get(from + row));
+            }
+        }
+
+        this.capacity = capacity;
+        this.types = types;
+        this.references = references;
+        this.primitives = primitives;
+    }
+
+    /**
+     * Starts a new row. The values of the previous row, which were not set, are bound to their defaults.
+     */
+    public void nextRow() {
+        if (rows == capacity) {
+            allocate(capacity << 1);
+        }
+
+        for (int c = 0; c < columns; c++) {
+            types[c * capacity + rows] = DEFAULT;
+        }
+
+        rows++;
+        column = 0;
+    }
+
+    /**
+     * Adds a row of objects.
+     *
+     * @param values The values in the order of the bind parameters
+     */
+    public void addRow(Object[] values) {
+        if (values.length > columns) {
+            throw new IllegalArgumentException("The query has only " + columns + " parameters!");
+        }
+
+        nextRow();
+
+        for (Object value : values) {
+            setObject(value);
+        }
+    }
+
+    private int next(byte type) {
+        if (rows == 0) {
+            throw new IllegalStateException("No row was started!");
+        }
+
+        if (column == columns) {
+            throw new IllegalArgumentException("The query has only " + columns + " parameters!");
+        }
+
+        int index = column++ * capacity + rows - 1;
+        types[index] = type;
+        return index;
+    }
+
+    @Override
+    public void setLong(long value) {
+        primitives.put(next(LONG), value);
+    }
+
+    @Override
+    public void setInt(int value) {
+        primitives.put(next(INT), value);
+    }
+
+    @Override
+    public void setDouble(double value) {
+        primitives.put(next(DOUBLE), Double.doubleToRawLongBits(value));
+    }
+
+    @Override
+    public void setUUID(UUID value) {
+        setObject(value);
+    }
+
+    @Override
+    public void setBytes(byte[] value) {
+        setObject(value);
+    }
+
+    @Override
+    public void setString(String value) {
+        setObject(value);
+    }
+
+    @Override
+    public void setNull() {
+        next(NULL);
+    }
+
+    @Override
+    public void setObject(Object value) {
+        if (value == null) {
+            setNull();
+        } else {
+            references[next(OBJECT)] = value;
+        }
+    }
+
+    /**
+     * Removes the last row, for example if writing it failed.
+     */
+    public void removeLastRow() {
+        if (rows > 0) {
+            rows--;
+            column = columns;
+
+            for (int c = 0; c < columns; c++) {
+                references[c * capacity + rows] = null;
+            }
+        }
+    }
+
+    /**
+     * Removes all rows, but keeps the storage.
+     */
+    public void clear() {
+        for (int c = 0; c < columns; c++) {
+            Arrays.fill(references, c * capacity, c * capacity + rows, null);
+        }
+
+        rows = 0;
+        column = 0;
+    }
+
+    byte getType(int row, int column) {
+        return types[column * capacity + row];
+    }
+
+    long getLong(int row, int column) {
+        return primitives.get(column * capacity + row);
+    }
+
+    double getDouble(int row, int column) {
+        return Double.longBitsToDouble(getLong(row, column));
+    }
+
+    Object getReference(int row, int column) {
+        return references[column * capacity + row];
+    }
+
+    /**
+     * @return The value at a position boxed, null if it is null or not set
+     */
+    Object getObject(int row, int column) {
+        switch (getType(row, column)) {
+            case LONG:
+                return getLong(row, column);
+            case INT:
+                return (int) getLong(row, column);
+            case DOUBLE:
+                return getDouble(row, column);
+            case OBJECT:
+                return getReference(row, column);
+            default:
+                return null;
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+}
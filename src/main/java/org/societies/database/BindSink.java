@@ -0,0 +1,33 @@
+package org.societies.database;
+
+import java.util.UUID;
+
+/**
+ * Represents a sink for the bind values of a row.
+ * <p>
+ * Every call sets the next bind parameter of the current row, in the order of the parameters of the query.
+ * Parameters, which are not set, are bound to their defaults.
+ */
+public interface BindSink {
+
+    void setLong(long value);
+
+    void setInt(int value);
+
+    void setDouble(double value);
+
+    void setUUID(UUID value);
+
+    void setBytes(byte[] value);
+
+    void setString(String value);
+
+    void setNull();
+
+    /**
+     * Sets a value of any type, which is converted by the data type of the parameter.
+     *
+     * @param value The value or null
+     */
+    void setObject(Object value);
+}
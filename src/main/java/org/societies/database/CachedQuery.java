@@ -0,0 +1,775 @@
+package org.societies.database;
+
+import org.jetbrains.annotations.Nullable;
+import org.jooq.Binding;
+import org.jooq.BindingSetStatementContext;
+import org.jooq.Configuration;
+import org.jooq.ConnectionProvider;
+import org.jooq.Converter;
+import org.jooq.DSLContext;
+import org.jooq.DataType;
+import org.jooq.Insert;
+import org.jooq.Param;
+import org.jooq.Query;
+import org.jooq.SQLDialect;
+import org.jooq.conf.Settings;
+import org.jooq.impl.DefaultBinding;
+import org.jooq.exception.DataAccessException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Represents a query, which was built and rendered once.
+ * <p>
+ * Holds the rendered SQL and the layout of its bind parameters, which are their data types, bindings and default
+ * values in order. Executing it prepares the SQL directly and binds the values through the jOOQ bindings,
+ * so neither the syntax tree nor the SQL string is built again.
+ * <p>
+ * Statements, which are prepared directly, do not pass the jOOQ execution lifecycle, so configured
+ * {@link org.jooq.ExecuteListener}s are not notified of them. Only queries without a known parameter layout are
+ * executed by jOOQ. Reads are not cached, selects of the {@link QueryProvider} are built and fetched by jOOQ,
+ * so listeners, like the read counter of the {@link ReplicatedDatabase}, see every read.
+ * This is immutable and can be shared between threads.
+ */
+public final class CachedQuery {
+
+    /** The statements, which write to a table, and the keywords, which may precede the table */
+    private static final List<String> WRITES = Arrays.asList("insert", "replace", "update", "delete", "merge");
+    private static final List<String> MODIFIERS = Arrays.asList("low_priority", "delayed", "high_priority", "quick",
+            "ignore", "into", "from");
+
+    private final String sql;
+    private final Object[] defaults;
+
+    /** The types and bindings of every bind parameter or null if the layout is unknown */
+    private final DataType[] types;
+    private final Binding[] bindings;
+
+    /** The type of every bind parameter, which is bound by plain JDBC setters, or null if it has to be converted */
+    private final Class[] plainTypes;
+
+    /** The bounds of the row of values of an insert, which holds every bind parameter, or -1 */
+    private final int rowStart;
+    private final int rowEnd;
+
+    /** The name of the table this query writes to or null */
+    private final String table;
+
+    /** The last statement, which was expanded to several rows */
+    private volatile MultiRow multiRow;
+
+    CachedQuery(String sql, Object[] defaults, DataType[] types, Binding[] bindings, int rowStart, int rowEnd) {
+        this.sql = sql;
+        this.defaults = defaults;
+        this.types = types;
+        this.bindings = bindings;
+        this.plainTypes = bindings == null ? null : plainTypes(bindings);
+        this.rowStart = rowStart;
+        this.rowEnd = rowEnd;
+        this.table = findTable(sql);
+    }
+
+    static CachedQuery render(DSLContext context, Query query) {
+        String sql = context.render(query);
+        Object[] defaults = query.getBindValues().toArray();
+
+        // Named parameters, which occur several times, are only listed once
+        Collection<Param<?>> params = query.getParams().values();
+
+        if (params.size() != defaults.length) {
+            return new CachedQuery(sql, defaults, null, null, -1, -1);
+        }
+
+        int rowStart = -1;
+        int rowEnd = -1;
+
+        if (query instanceof Insert) {
+            int[] row = findRow(sql, defaults.length);
+
+            if (row != null) {
+                rowStart = row[0];
+                rowEnd = row[1];
+            }
+        }
+
+        DataType[] types = new DataType[defaults.length];
+        Binding[] bindings = new Binding[defaults.length];
+
+        int i = 0;
+        for (Param<?> param : params) {
+            types[i] = param.getDataType();
+            bindings[i] = param.getBinding();
+            i++;
+        }
+
+        return new CachedQuery(sql, defaults, types, bindings, rowStart, rowEnd);
+    }
+
+    private static Class[] plainTypes(Binding[] bindings) {
+        Class[] types = new Class[bindings.length];
+
+        for (int i = 0; i < bindings.length; i++) {
+            Converter converter = bindings[i].converter();
+
+            if (bindings[i] instanceof DefaultBinding && converter.fromType() == converter.toType()) {
+                types[i] = converter.toType();
+            }
+        }
+
+        return types;
+    }
+
+    /**
+     * Finds the row of values in the SQL of an insert.
+     *
+     * @param sql        The SQL
+     * @param parameters The number of bind parameters
+     * @return The start and end of the row or null if there is no single row holding every bind parameter
+     */
+    private static int[] findRow(String sql, int parameters) {
+        int length = sql.length();
+        int start = -1;
+
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+
+            if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(sql, i);
+            } else if (sql.regionMatches(true, i, "values", 0, 6)) {
+                int j = i + 6;
+
+                while (j < length && Character.isWhitespace(sql.charAt(j))) {
+                    j++;
+                }
+
+                if (j < length && sql.charAt(j) == '(') {
+                    start = j;
+                    break;
+                }
+            }
+        }
+
+        if (start < 0) {
+            return null;
+        }
+
+        int depth = 0;
+        int found = 0;
+        int end = -1;
+
+        for (int i = start; i < length && end < 0; i++) {
+            char c = sql.charAt(i);
+
+            if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(sql, i);
+            } else if (c == '?') {
+                found++;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                end = i + 1;
+            }
+        }
+
+        if (end < 0 || found != parameters) {
+            return null;
+        }
+
+        // A statement with several rows already can not be expanded
+        for (int i = end; i < length; i++) {
+            char c = sql.charAt(i);
+
+            if (c == ',') {
+                return null;
+            } else if (!Character.isWhitespace(c)) {
+                break;
+            }
+        }
+
+        return new int[]{start, end};
+    }
+
+    /**
+     * Finds the table an insert, replace, update, delete or merge writes to.
+     * Only the first table of statements, which write to several tables, is found.
+     *
+     * @param sql The SQL
+     * @return The unqualified name of the table or null if the SQL does not write to a table
+     */
+    @Nullable
+    static String findTable(String sql) {
+        int i = skipWhitespace(sql, 0);
+        int end = skipWord(sql, i);
+        String verb = sql.substring(i, end).toLowerCase(Locale.ENGLISH);
+
+        if (!WRITES.contains(verb)) {
+            return null;
+        }
+
+        i = skipWhitespace(sql, end);
+        end = skipWord(sql, i);
+
+        while (end > i && MODIFIERS.contains(sql.substring(i, end).toLowerCase(Locale.ENGLISH))) {
+            i = skipWhitespace(sql, end);
+            end = skipWord(sql, i);
+        }
+
+        // The last part of a qualified name is the table
+        String table = null;
+
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+
+            if (c == '"' || c == '`') {
+                end = skipQuoted(sql, i);
+                table = sql.substring(i + 1, Math.min(end, sql.length())).replace(c + "" + c, c + "");
+                end++;
+            } else if (c == '[') {
+                end = sql.indexOf(']', i);
+                end = end < 0 ? sql.length() : end;
+                table = sql.substring(i + 1, end);
+                end++;
+            } else {
+                end = skipWord(sql, i);
+
+                if (end == i) {
+                    break;
+                }
+
+                table = sql.substring(i, end);
+            }
+
+            if (end >= sql.length() || sql.charAt(end) != '.') {
+                break;
+            }
+
+            i = end + 1;
+        }
+
+        return table;
+    }
+
+    private static int skipWhitespace(String sql, int start) {
+        int i = start;
+
+        while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) {
+            i++;
+        }
+
+        return i;
+    }
+
+    private static int skipWord(String sql, int start) {
+        int i = start;
+
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '$') {
+                break;
+            }
+
+            i++;
+        }
+
+        return i;
+    }
+
+    private static int skipQuoted(String sql, int start) {
+        char quote = sql.charAt(start);
+        int i = start + 1;
+
+        while (i < sql.length()) {
+            if (sql.charAt(i) == quote) {
+                // Doubled quotes escape themselves
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+
+                return i;
+            }
+
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * Creates a query bound to its default values.
+     *
+     * @param context The context to attach the query to
+     * @return A new query, which may be used by a single thread
+     */
+    public Query create(DSLContext context) {
+        return context.query(sql, defaults);
+    }
+
+    /**
+     * Creates a query bound to the given values.
+     * Missing values at the end are bound to their defaults.
+     *
+     * @param context The context to attach the query to
+     * @param values  The values in the order of the bind parameters
+     * @return A new query, which may be used by a single thread
+     */
+    public Query create(DSLContext context, Object[] values) {
+        return context.query(sql, complete(values));
+    }
+
+    /**
+     * Executes this query once.
+     *
+     * @param context The context to get the connection from
+     * @param values  The values in the order of the bind parameters
+     * @return The number of affected rows
+     * @throws DataAccessException If the execution failed
+     */
+    public int execute(DSLContext context, Object[] values) throws DataAccessException {
+        if (bindings == null) {
+            return create(context, values).execute();
+        }
+
+        Configuration configuration = context.configuration();
+        ConnectionProvider connectionProvider = configuration.connectionProvider();
+        Connection connection = connectionProvider.acquire();
+
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+
+            try {
+                bind(configuration, statement, values);
+                return statement.executeUpdate();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Failed to execute " + sql, e);
+        } finally {
+            connectionProvider.release(connection);
+        }
+    }
+
+    /**
+     * Executes this query once for every row as a JDBC batch.
+     *
+     * @param context The context to get the connection from
+     * @param rows    The values of every row in the order of the bind parameters
+     * @return The number of affected rows of every row
+     * @throws DataAccessException If the execution failed
+     */
+    public int[] execute(DSLContext context, List<Object[]> rows) throws DataAccessException {
+        if (bindings == null) {
+            return context.batch(create(context)).bind(rows.toArray(new Object[rows.size()][])).execute();
+        }
+
+        Configuration configuration = context.configuration();
+        ConnectionProvider connectionProvider = configuration.connectionProvider();
+        Connection connection = connectionProvider.acquire();
+
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+
+            try {
+                for (int i = 0; i < rows.size(); i++) {
+                    bind(configuration, statement, rows.get(i));
+                    statement.addBatch();
+                }
+
+                return statement.executeBatch();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Failed to execute " + sql, e);
+        } finally {
+            connectionProvider.release(connection);
+        }
+    }
+
+    /**
+     * Executes this query once for every row of a buffer as a JDBC batch.
+     *
+     * @param context The context to get the connection from
+     * @param buffer  The buffer of rows
+     * @return The number of affected rows of every row
+     * @throws DataAccessException If the execution failed
+     */
+    public int[] execute(DSLContext context, BindBuffer buffer) throws DataAccessException {
+        if (bindings == null) {
+            return context.batch(create(context)).bind(toArray(buffer)).execute();
+        }
+
+        Configuration configuration = context.configuration();
+        ConnectionProvider connectionProvider = configuration.connectionProvider();
+        Connection connection = connectionProvider.acquire();
+
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+
+            try {
+                for (int row = 0; row < buffer.getRows(); row++) {
+                    bind(configuration, statement, buffer, row, 0);
+                    statement.addBatch();
+                }
+
+                return statement.executeBatch();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Failed to execute " + sql, e);
+        } finally {
+            connectionProvider.release(connection);
+        }
+    }
+
+    /**
+     * Executes this insert once for all rows, as a single statement with several rows of values.
+     *
+     * @param context The context to get the connection from
+     * @param rows    The values of every row in the order of the bind parameters
+     * @return The number of affected rows
+     * @throws DataAccessException   If the execution failed
+     * @throws IllegalStateException If this query is no insert, which can be expanded to several rows
+     */
+    public int executeMultiRow(DSLContext context, List<Object[]> rows) throws DataAccessException {
+        if (!isMultiRowInsert()) {
+            throw new IllegalStateException("The query " + sql + " can not be expanded to several rows!");
+        }
+
+        String multiRowSQL = getMultiRowSQL(rows.size());
+
+        Configuration configuration = context.configuration();
+        ConnectionProvider connectionProvider = configuration.connectionProvider();
+        Connection connection = connectionProvider.acquire();
+
+        try {
+            PreparedStatement statement = connection.prepareStatement(multiRowSQL);
+
+            try {
+                for (int i = 0; i < rows.size(); i++) {
+                    bind(configuration, statement, rows.get(i), i * defaults.length);
+                }
+
+                return statement.executeUpdate();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Failed to execute " + multiRowSQL, e);
+        } finally {
+            connectionProvider.release(connection);
+        }
+    }
+
+    /**
+     * Executes this insert once for a range of rows of a buffer, as a single statement with several rows of values.
+     *
+     * @param context The context to get the connection from
+     * @param buffer  The buffer of rows
+     * @param from    The first row, inclusive
+     * @param to      The last row, exclusive
+     * @return The number of affected rows
+     * @throws DataAccessException   If the execution failed
+     * @throws IllegalStateException If this query is no insert, which can be expanded to several rows
+     */
+    public int executeMultiRow(DSLContext context, BindBuffer buffer, int from, int to) throws DataAccessException {
+        if (!isMultiRowInsert()) {
+            throw new IllegalStateException("The query " + sql + " can not be expanded to several rows!");
+        }
+
+        String multiRowSQL = getMultiRowSQL(to - from);
+
+        Configuration configuration = context.configuration();
+        ConnectionProvider connectionProvider = configuration.connectionProvider();
+        Connection connection = connectionProvider.acquire();
+
+        try {
+            PreparedStatement statement = connection.prepareStatement(multiRowSQL);
+
+            try {
+                for (int row = from; row < to; row++) {
+                    bind(configuration, statement, buffer, row, (row - from) * defaults.length);
+                }
+
+                return statement.executeUpdate();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Failed to execute " + multiRowSQL, e);
+        } finally {
+            connectionProvider.release(connection);
+        }
+    }
+
+    /**
+     * @return Whether this query is an insert, which can be expanded to several rows of values
+     */
+    public boolean isMultiRowInsert() {
+        return rowStart >= 0 && bindings != null;
+    }
+
+    private String getMultiRowSQL(int rows) {
+        if (rows == 1) {
+            return sql;
+        }
+
+        MultiRow multiRow = this.multiRow;
+
+        if (multiRow != null && multiRow.rows == rows) {
+            return multiRow.sql;
+        }
+
+        String row = sql.substring(rowStart, rowEnd);
+        StringBuilder builder = new StringBuilder(sql.length() + (row.length() + 2) * (rows - 1));
+
+        builder.append(sql, 0, rowEnd);
+
+        for (int i = 1; i < rows; i++) {
+            builder.append(", ").append(row);
+        }
+
+        builder.append(sql, rowEnd, sql.length());
+
+        String expanded = builder.toString();
+        this.multiRow = new MultiRow(rows, expanded);
+        return expanded;
+    }
+
+    private void bind(Configuration configuration, PreparedStatement statement, Object[] values) throws SQLException {
+        bind(configuration, statement, values, 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void bind(Configuration configuration, PreparedStatement statement, Object[] values, int offset)
+            throws SQLException {
+        if (values.length > defaults.length) {
+            throw new IllegalArgumentException("The query " + sql + " has only " + defaults.length + " parameters!");
+        }
+
+        for (int i = 0; i < defaults.length; i++) {
+            Object value = i < values.length ? types[i].convert(values[i]) : defaults[i];
+            bindings[i].set(new SetContext<Object>(configuration, statement, offset + i + 1, value));
+        }
+    }
+
+    /**
+     * Binds a row of a buffer. Primitives of plain parameters are set without boxing.
+     */
+    @SuppressWarnings("unchecked")
+    private void bind(Configuration configuration, PreparedStatement statement, BindBuffer buffer, int row, int offset)
+            throws SQLException {
+        if (buffer.getColumns() != defaults.length) {
+            throw new IllegalArgumentException("The query " + sql + " has " + defaults.length + " parameters!");
+        }
+
+        for (int i = 0; i < defaults.length; i++) {
+            int index = offset + i + 1;
+            Class type = plainTypes[i];
+            Object value;
+
+            switch (buffer.getType(row, i)) {
+                case BindBuffer.DEFAULT:
+                    value = defaults[i];
+                    break;
+                case BindBuffer.LONG:
+                    if (type == Long.class) {
+                        statement.setLong(index, buffer.getLong(row, i));
+                        continue;
+                    }
+
+                    value = types[i].convert(buffer.getLong(row, i));
+                    break;
+                case BindBuffer.INT:
+                    if (type == Integer.class) {
+                        statement.setInt(index, (int) buffer.getLong(row, i));
+                        continue;
+                    } else if (type == Long.class) {
+                        statement.setLong(index, buffer.getLong(row, i));
+                        continue;
+                    }
+
+                    value = types[i].convert((int) buffer.getLong(row, i));
+                    break;
+                case BindBuffer.DOUBLE:
+                    if (type == Double.class) {
+                        statement.setDouble(index, buffer.getDouble(row, i));
+                        continue;
+                    }
+
+                    value = types[i].convert(buffer.getDouble(row, i));
+                    break;
+                case BindBuffer.OBJECT:
+                    Object reference = buffer.getReference(row, i);
+
+                    if (type == String.class && reference instanceof String) {
+                        statement.setString(index, (String) reference);
+                        continue;
+                    } else if (type == byte[].class && reference instanceof byte[]) {
+                        statement.setBytes(index, (byte[]) reference);
+                        continue;
+                    }
+
+                    value = types[i].convert(reference);
+                    break;
+                default:
+                    value = null;
+            }
+
+            bindings[i].set(new SetContext<Object>(configuration, statement, index, value));
+        }
+    }
+
+    private Object[][] toArray(BindBuffer buffer) {
+        Object[][] rows = new Object[buffer.getRows()][];
+
+        for (int row = 0; row < rows.length; row++) {
+            Object[] values = defaults.clone();
+
+            for (int i = 0; i < values.length && i < buffer.getColumns(); i++) {
+                if (buffer.getType(row, i) != BindBuffer.DEFAULT) {
+                    values[i] = buffer.getObject(row, i);
+                }
+            }
+
+            rows[row] = values;
+        }
+
+        return rows;
+    }
+
+    /**
+     * @return Whether the bind parameters of this query are known, so rows of a {@link BindBuffer} are bound directly
+     */
+    public boolean isBindable() {
+        return bindings != null;
+    }
+
+    private Object[] complete(Object[] values) {
+        if (values.length > defaults.length) {
+            throw new IllegalArgumentException("The query " + sql + " has only " + defaults.length + " parameters!");
+        }
+
+        if (values.length == defaults.length) {
+            return values;
+        }
+
+        Object[] bindings = defaults.clone();
+        System.arraycopy(values, 0, bindings, 0, values.length);
+        return bindings;
+    }
+
+    public String getSQL() {
+        return sql;
+    }
+
+    public int getParameterCount() {
+        return defaults.length;
+    }
+
+    /**
+     * @return The unqualified name of the table this query writes to or null if it does not write to a table
+     */
+    @Nullable
+    public String getTable() {
+        return table;
+    }
+
+    @Override
+    public String toString() {
+        return "CachedQuery{" +
+                "sql='" + sql + '\'' +
+                ", parameters=" + defaults.length +
+                '}';
+    }
+
+    private static final class MultiRow {
+        private final int rows;
+        private final String sql;
+
+        private MultiRow(int rows, String sql) {
+            this.rows = rows;
+            this.sql = sql;
+        }
+    }
+
+    private static final class SetContext<U> implements BindingSetStatementContext<U> {
+
+        private final Configuration configuration;
+        private final PreparedStatement statement;
+        private final int index;
+        private final U value;
+
+        SetContext(Configuration configuration, PreparedStatement statement, int index, U value) {
+            this.configuration = configuration;
+            this.statement = statement;
+            this.index = index;
+            this.value = value;
+        }
+
+        @Override
+        public PreparedStatement statement() {
+            return statement;
+        }
+
+        @Override
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public U value() {
+            return value;
+        }
+
+        @Override
+        public <T> BindingSetStatementContext<T> convert(Converter<T, U> converter) {
+            return new SetContext<T>(configuration, statement, index, converter.to(value));
+        }
+
+        @Override
+        public Configuration configuration() {
+            return configuration;
+        }
+
+        @Override
+        public Settings settings() {
+            return configuration.settings();
+        }
+
+        @Override
+        public SQLDialect dialect() {
+            return configuration.dialect();
+        }
+
+        @Override
+        public SQLDialect family() {
+            return configuration.dialect().family();
+        }
+
+        @Override
+        public Map<Object, Object> data() {
+            return configuration.data();
+        }
+
+        @Override
+        public Object data(Object key) {
+            return configuration.data(key);
+        }
+
+        @Override
+        public Object data(Object key, Object value) {
+            return configuration.data(key, value);
+        }
+    }
+}
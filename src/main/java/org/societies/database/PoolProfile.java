@@ -0,0 +1,141 @@
+package org.societies.database;
+
+import com.zaxxer.hikari.HikariConfig;
+import org.jooq.SQLDialect;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents the sizing and tuning of a connection pool.
+ * <p>
+ * A maximum of zero connections derives the size from the machine, two connections per core for the readers and
+ * one for every worker thread, which holds a connection while it executes a batch. MySQL connections use
+ * server side prepared statements, cache them on the client and rewrite JDBC batches to multi-row statements.
+ */
+public class PoolProfile {
+
+    /**
+     * The fixed pool of ten connections without warm-up, which is used if no profile is configured
+     */
+    public static final PoolProfile DEFAULT = new PoolProfile(AbstractDatabase.MAX_CONNECTIONS, 0, 0,
+            AbstractDatabase.MAX_LIFETIME, TimeUnit.SECONDS.toMillis(30), TimeUnit.MILLISECONDS, false, false);
+
+    public static final int PREPARED_STATEMENT_CACHE_SIZE = 250;
+    public static final int PREPARED_STATEMENT_CACHE_SQL_LIMIT = 2048;
+
+    private final int maxConnections;
+    private final int minIdle;
+    private final int workerThreads;
+    private final long maxLifetime;
+    private final long connectionTimeout;
+    private final boolean warmUp;
+    private final boolean tuneDriver;
+
+    /**
+     * @param maxConnections    The maximum number of connections, 0 to derive it from the cores and workers
+     * @param minIdle           The minimum number of idle connections, 0 to keep the pool at its maximum size
+     * @param workerThreads     The number of worker threads writing to the database
+     * @param maxLifetime       The maximum lifetime of a connection
+     * @param connectionTimeout The maximum time to wait for a connection
+     * @param unit              The unit of the times
+     * @param warmUp            Whether the pool opens and validates its connections on initialization
+     * @param tuneDriver        Whether the statement cache and batch properties of the driver are set
+     */
+    @Inject
+    public PoolProfile(@Named("pool-max-connections") int maxConnections,
+                       @Named("pool-min-idle") int minIdle,
+                       @Named("pool-worker-threads") int workerThreads,
+                       @Named("pool-max-lifetime") long maxLifetime,
+                       @Named("pool-connection-timeout") long connectionTimeout,
+                       @Named("pool-time-unit") TimeUnit unit,
+                       @Named("pool-warm-up") boolean warmUp,
+                       @Named("pool-tune-driver") boolean tuneDriver) {
+        if (maxConnections < 0 || minIdle < 0 || workerThreads < 0) {
+            throw new IllegalArgumentException("The sizes of the pool must not be negative!");
+        }
+
+        this.maxConnections = maxConnections;
+        this.minIdle = minIdle;
+        this.workerThreads = workerThreads;
+        this.maxLifetime = unit.toMillis(maxLifetime);
+        this.connectionTimeout = unit.toMillis(connectionTimeout);
+        this.warmUp = warmUp;
+        this.tuneDriver = tuneDriver;
+    }
+
+    /**
+     * Applies the sizing and the timeouts to a config.
+     *
+     * @param config The config
+     */
+    public void apply(HikariConfig config) {
+        int size = getMaximumPoolSize();
+
+        config.setMaximumPoolSize(size);
+        config.setMinimumIdle(minIdle == 0 ? size : Math.min(minIdle, size));
+        config.setMaxLifetime(maxLifetime);
+        config.setConnectionTimeout(connectionTimeout);
+
+        // Exposes the live statistics of the pool
+        config.setRegisterMbeans(true);
+    }
+
+    /**
+     * Applies the tuning properties of the driver of a dialect to a config.
+     *
+     * @param config  The config
+     * @param dialect The dialect
+     */
+    public void applyDriverProperties(HikariConfig config, SQLDialect dialect) {
+        if (!tuneDriver) {
+            return;
+        }
+
+        SQLDialect family = dialect.family();
+
+        if (family == SQLDialect.MYSQL || family == SQLDialect.MARIADB) {
+            config.addDataSourceProperty("cachePrepStmts", true);
+            config.addDataSourceProperty("prepStmtCacheSize", PREPARED_STATEMENT_CACHE_SIZE);
+            config.addDataSourceProperty("prepStmtCacheSqlLimit", PREPARED_STATEMENT_CACHE_SQL_LIMIT);
+            config.addDataSourceProperty("useServerPrepStmts", true);
+            config.addDataSourceProperty("rewriteBatchedStatements", true);
+        }
+    }
+
+    /**
+     * @return The configured maximum number of connections or the one derived from the cores and workers
+     */
+    public int getMaximumPoolSize() {
+        if (maxConnections > 0) {
+            return maxConnections;
+        }
+
+        return Runtime.getRuntime().availableProcessors() * 2 + workerThreads;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public long getMaxLifetime() {
+        return maxLifetime;
+    }
+
+    public long getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    public boolean isTuneDriver() {
+        return tuneDriver;
+    }
+}
@@ -0,0 +1,18 @@
+package org.societies.database;
+
+/**
+ * Gets notified about the outcome of an asynchronous query.
+ * Callbacks are called by the read thread and therefore have to return quickly.
+ *
+ * @param <T> The type of the result
+ */
+public interface QueryCallback<T> {
+
+    void completed(T result);
+
+    /**
+     * @param cause The failure, a {@link java.util.concurrent.TimeoutException} if the query took too long or a
+     *              {@link java.util.concurrent.RejectedExecutionException} if too many queries are pending
+     */
+    void failed(Throwable cause);
+}
@@ -0,0 +1,172 @@
+package org.societies.database;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Represents the pending result of an asynchronous query.
+ * <p>
+ * Completes once with either the result or the failure. Cancelling it interrupts the read thread, if the query
+ * is still running.
+ *
+ * @param <T> The type of the result
+ */
+public final class QueryFuture<T> implements Future<T> {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile T result;
+    private volatile Throwable failure;
+
+    /** The task executing the query, which is interrupted on cancellation */
+    private volatile Future<?> task;
+
+    /** Callbacks added before this future was done, guarded by this */
+    private ArrayList<QueryCallback<? super T>> callbacks;
+
+    public static <T> QueryFuture<T> completed(T result) {
+        QueryFuture<T> future = new QueryFuture<T>();
+        future.complete(result);
+        return future;
+    }
+
+    public static <T> QueryFuture<T> failed(Throwable cause) {
+        QueryFuture<T> future = new QueryFuture<T>();
+        future.fail(cause);
+        return future;
+    }
+
+    /**
+     * @param result The result
+     * @return Whether this future was completed, false if it was done already
+     */
+    public boolean complete(T result) {
+        return finish(result, null);
+    }
+
+    /**
+     * @param cause The failure
+     * @return Whether this future was failed, false if it was done already
+     */
+    public boolean fail(Throwable cause) {
+        return finish(null, cause);
+    }
+
+    private boolean finish(T result, Throwable failure) {
+        ArrayList<QueryCallback<? super T>> callbacks;
+
+        synchronized (this) {
+            if (isDone()) {
+                return false;
+            }
+
+            this.result = result;
+            this.failure = failure;
+            done.countDown();
+
+            callbacks = this.callbacks;
+            this.callbacks = null;
+        }
+
+        if (callbacks != null) {
+            for (QueryCallback<? super T> callback : callbacks) {
+                notify(callback);
+            }
+        }
+
+        return true;
+    }
+
+    void setTask(Future<?> task) {
+        this.task = task;
+
+        if (isCancelled()) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Adds a callback, which is called immediately if this future is already done.
+     *
+     * @param callback The callback
+     */
+    public void addCallback(QueryCallback<? super T> callback) {
+        synchronized (this) {
+            if (!isDone()) {
+                if (callbacks == null) {
+                    callbacks = new ArrayList<QueryCallback<? super T>>(1);
+                }
+
+                callbacks.add(callback);
+                return;
+            }
+        }
+
+        notify(callback);
+    }
+
+    private void notify(QueryCallback<? super T> callback) {
+        if (failure == null) {
+            callback.completed(result);
+        } else {
+            callback.failed(failure);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!fail(new CancellationException())) {
+            return false;
+        }
+
+        Future<?> task = this.task;
+
+        if (task != null) {
+            task.cancel(mayInterruptIfRunning);
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return failure instanceof CancellationException;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        done.await();
+        return result();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+
+        return result();
+    }
+
+    private T result() throws ExecutionException {
+        if (failure instanceof CancellationException) {
+            throw (CancellationException) failure;
+        }
+
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+
+        return result;
+    }
+}
@@ -8,10 +8,27 @@ import org.jooq.Query;
  */
 public class QueryKey<Q extends Query> {
 
+    private final String name;
+
+    public QueryKey() {
+        this(null);
+    }
+
+    /**
+     * @param name The name of this key, which is shown in metrics and logs
+     */
+    public QueryKey(String name) {
+        this.name = name;
+    }
+
     public static <Q extends Query> QueryKey<Q> create() {
         return new QueryKey<Q>();
     }
 
+    public static <Q extends Query> QueryKey<Q> create(String name) {
+        return new QueryKey<Q>(name);
+    }
+
     public Q toQuery(Query query) {
         try {
             return CastSafe.toGeneric(query);
@@ -21,4 +38,9 @@ public class QueryKey<Q extends Query> {
             );
         }
     }
+
+    @Override
+    public String toString() {
+        return name != null ? name : super.toString();
+    }
 }
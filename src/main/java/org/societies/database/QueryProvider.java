@@ -2,12 +2,16 @@ package org.societies.database;
 
 import gnu.trove.map.hash.THashMap;
 import net.catharos.lib.core.lang.Closable;
+import org.jetbrains.annotations.Nullable;
 import org.joda.time.DateTime;
 import org.jooq.*;
 import org.jooq.impl.DSL;
 import org.jooq.types.UInteger;
 
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides queries
@@ -16,6 +20,21 @@ public abstract class QueryProvider implements Closable {
 
     private final DSLProvider provider;
     private THashMap<QueryKey, QueryBuilder> builders = new THashMap<QueryKey, QueryBuilder>();
+    private final ConcurrentHashMap<QueryKey, CachedQuery> cache = new ConcurrentHashMap<QueryKey, CachedQuery>();
+
+    @Nullable
+    private volatile ResultCache resultCache;
+
+    @Nullable
+    private volatile ReadExecutor readExecutor;
+
+    private static final Object[] NO_VALUES = new Object[0];
+
+    /** The fetch size, which streams the result row by row */
+    public static final int STREAMING = 0;
+
+    /** The fetch size of streams of dialects, which do not stream row by row */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
 
     public static final UUID DEFAULT_UUID = new UUID(0L, 0L);
 
@@ -49,6 +68,20 @@ public abstract class QueryProvider implements Closable {
         return new UUID(0L, 0L);
     }
 
+    /**
+     * @return A new version 7 UUID, which is ordered by time in the plain layout of the {@link UUIDConverter}
+     */
+    public static UUID newOrderedUUID() {
+        return UUIDConverter.generateOrdered();
+    }
+
+    /**
+     * @return A new version 1 UUID, which is ordered by time in the swapped layout of the {@link UUIDConverter}
+     */
+    public static UUID newTimeBasedUUID() {
+        return UUIDConverter.generateTimeBased();
+    }
+
     protected static Param<UUID> uuid_param() {
         return DSL.param("uuid", UUID.class);
     }
@@ -78,17 +111,267 @@ public abstract class QueryProvider implements Closable {
         return key.toQuery(query.create(provider.getDSLContext()));
     }
 
+    /**
+     * Gets a query, which was built and rendered only once.
+     * Building the query for the first time is not synchronized, so concurrent callers may render it twice.
+     *
+     * @param key The key of the query
+     * @return The cached query
+     */
+    public CachedQuery getCachedQuery(QueryKey<?> key) {
+        CachedQuery cached = cache.get(key);
+
+        if (cached == null) {
+            cached = CachedQuery.render(provider.getDSLContext(), getQuery(key));
+
+            CachedQuery previous = cache.putIfAbsent(key, cached);
+
+            if (previous != null) {
+                cached = previous;
+            }
+        }
+
+        return cached;
+    }
+
     public <R extends Record> Result<R> query(final QueryKey<? extends Select<R>> key) {
-        return query(getQuery(key));
+        return query(key, NO_VALUES);
+    }
+
+    /**
+     * Fetches the result of a query, from the {@link ResultCache} if the query is cached.
+     *
+     * @param key    The key of the query
+     * @param values The values to bind in the order of the parameters
+     * @param <R>    The type of the records
+     * @return The result, which is never shared with other readers
+     */
+    public <R extends Record> Result<R> query(final QueryKey<? extends Select<R>> key, Object... values) {
+        ResultCache resultCache = this.resultCache;
+
+        if (resultCache == null || !resultCache.isCached(key)) {
+            return fetch(key, values, 0);
+        }
+
+        long generation = resultCache.getGeneration(key);
+        Result<R> result = resultCache.get(key, values);
+
+        if (result == null) {
+            result = fetch(key, values, 0);
+            resultCache.put(key, values, result, generation);
+        }
+
+        return result;
+    }
+
+    /**
+     * Fetches the result of a query on the {@link ReadExecutor}, so the calling thread does not wait for the database.
+     * Results of the {@link ResultCache} are returned immediately.
+     *
+     * @param key    The key of the query
+     * @param values The values to bind in the order of the parameters
+     * @param <R>    The type of the records
+     * @return The future of the result, which is never shared with other readers
+     * @throws IllegalStateException If no read executor was set
+     */
+    public <R extends Record> QueryFuture<Result<R>> queryAsync(final QueryKey<? extends Select<R>> key,
+                                                               Object... values) {
+        ReadExecutor readExecutor = this.readExecutor;
+
+        if (readExecutor == null) {
+            throw new IllegalStateException("No read executor was set!");
+        }
+
+        final Object[] bound = values.clone();
+        final ResultCache resultCache = this.resultCache;
+        final long generation;
+
+        if (resultCache != null && resultCache.isCached(key)) {
+            generation = resultCache.getGeneration(key);
+            Result<R> result = resultCache.get(key, bound);
+
+            if (result != null) {
+                return QueryFuture.completed(result);
+            }
+        } else {
+            generation = -1;
+        }
+
+        final long timeout = readExecutor.getTimeout(key);
+
+        return readExecutor.submit(new Callable<Result<R>>() {
+            @Override
+            public Result<R> call() {
+                // The database cancels the statement a second after the read timed out
+                int seconds = timeout > 0 ? (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeout) + 1) : 0;
+                Result<R> result = fetch(key, bound, seconds);
+
+                if (generation >= 0) {
+                    resultCache.put(key, bound, result, generation);
+                }
+
+                return result;
+            }
+        }, timeout);
+    }
+
+    /**
+     * Fetches the result of a select, which is built for every call. Selects are not executed by their
+     * {@link CachedQuery}, so jOOQ attaches and types their records and notifies its listeners.
+     */
+    private <R extends Record> Result<R> fetch(QueryKey<? extends Select<R>> key, Object[] values, int timeout) {
+        Select<R> select = bind(getQuery(key), values);
+
+        if (timeout > 0) {
+            select.queryTimeout(timeout);
+        }
+
+        return query(select);
+    }
+
+    private static <R extends Record> Select<R> bind(Select<R> select, Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            select.bind(i + 1, values[i]);
+        }
+
+        return select;
+    }
+
+    /**
+     * Streams the result of a query, without holding the whole result in memory.
+     * The stream has to be closed, it holds a connection until then.
+     * <p>
+     * A fetch size of {@link #STREAMING} uses the streaming mode of MySQL, which reads one row after another.
+     * The connection can not execute anything else until the stream is closed in this mode.
+     * Positive fetch sizes are only honored by MySQL if the connection has useCursorFetch enabled.
+     *
+     * @param key       The key of the query
+     * @param fetchSize The number of rows to fetch at once or {@link #STREAMING}
+     * @param values    The values to bind in the order of the parameters
+     * @param <R>       The type of the records
+     * @return The stream of records
+     */
+    public <R extends Record> RecordStream<R> stream(QueryKey<? extends Select<R>> key, int fetchSize, Object... values) {
+        Select<R> select = bind(getQuery(key), values);
+        DSLContext context = getReadDSLContext();
+
+        select.fetchSize(fetchSizeOf(context, fetchSize));
+        return new RecordStream<R>(context.fetchLazy(select));
+    }
+
+    /**
+     * Streams the result of a query to a visitor, one record at a time.
+     * The connection is released once the stream is exhausted, the visitor stops it or fails.
+     *
+     * @param key       The key of the query
+     * @param fetchSize The number of rows to fetch at once or {@link #STREAMING}
+     * @param visitor   The visitor
+     * @param values    The values to bind in the order of the parameters
+     * @param <R>       The type of the records
+     * @return The number of visited records
+     */
+    public <R extends Record> int stream(QueryKey<? extends Select<R>> key, int fetchSize,
+                                         RecordVisitor<? super R> visitor, Object... values) {
+        RecordStream<R> stream = stream(key, fetchSize, values);
+
+        try {
+            while (stream.hasNext()) {
+                if (!visitor.visit(stream.next())) {
+                    break;
+                }
+            }
+
+            return stream.getFetched();
+        } finally {
+            stream.close();
+        }
+    }
+
+    private DSLContext getReadDSLContext() {
+        if (provider instanceof RoutingDSLProvider) {
+            return ((RoutingDSLProvider) provider).getReadDSLContext();
+        }
+
+        return provider.getDSLContext();
+    }
+
+    private static int fetchSizeOf(DSLContext context, int fetchSize) {
+        if (fetchSize > 0) {
+            return fetchSize;
+        }
+
+        SQLDialect family = context.configuration().dialect().family();
+
+        if (family == SQLDialect.MYSQL || family == SQLDialect.MARIADB) {
+            return Integer.MIN_VALUE;
+        }
+
+        return DEFAULT_FETCH_SIZE;
     }
 
+    /**
+     * Fetches the result of a query, from a replica if the database routes reads.
+     *
+     * @param query The query
+     * @param <R>   The type of the records
+     * @return The result
+     */
     public <R extends Record> Result<R> query(final Select<R> query) {
+        if (provider instanceof RoutingDSLProvider) {
+            return ((RoutingDSLProvider) provider).getReadDSLContext().fetch(query);
+        }
+
         return query.fetch();
     }
 
+    /**
+     * Invalidates the cached results of queries, which read from the tables a query writes to.
+     * The table is found in the SQL of its {@link CachedQuery}, further tables are registered at the {@link ResultCache}.
+     *
+     * @param key The key of the writing query
+     */
+    public void invalidate(QueryKey<?> key) {
+        ResultCache resultCache = this.resultCache;
+
+        if (resultCache == null) {
+            return;
+        }
+
+        String table = getCachedQuery(key).getTable();
+
+        if (table != null) {
+            resultCache.invalidate(table);
+        }
+
+        resultCache.invalidate(key);
+    }
+
+    public void setResultCache(@Nullable ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    @Nullable
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public void setReadExecutor(@Nullable ReadExecutor readExecutor) {
+        this.readExecutor = readExecutor;
+    }
+
+    @Nullable
+    public ReadExecutor getReadExecutor() {
+        return readExecutor;
+    }
+
     @Override
     public boolean close() {
         builders.clear();
+        cache.clear();
+
+        if (resultCache != null) {
+            resultCache.invalidateAll();
+        }
         return true;
     }
 
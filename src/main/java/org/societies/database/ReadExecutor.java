@@ -0,0 +1,273 @@
+package org.societies.database;
+
+import net.catharos.lib.core.lang.Closable;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents the executor of asynchronous reads, which is separate from the writing
+ * {@link org.societies.database.data.DataWorker}.
+ * <p>
+ * At most the configured number of reads run concurrently, which should leave connections of the pool for the
+ * writers. Further reads wait up to the maximum number of pending reads, beyond that they are rejected.
+ * Every read fails with a {@link TimeoutException} once it exceeds its timeout and its thread is interrupted.
+ * On Java 21 and newer every read runs on its own virtual thread, otherwise on a fixed pool of threads.
+ */
+@Singleton
+public final class ReadExecutor implements Closable {
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+
+    private final Semaphore permits;
+    private final int maxPending;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final long timeout;
+    private final ConcurrentHashMap<QueryKey<?>, Long> timeouts = new ConcurrentHashMap<QueryKey<?>, Long>();
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(
+            new DaemonThreadFactory("Read Timeout Watchdog"));
+
+    /**
+     * @param maxConcurrency The maximum number of concurrent reads
+     * @param maxPending     The maximum number of running and waiting reads
+     * @param timeout        The default timeout of a read, 0 for none
+     * @param unit           The unit of the timeout
+     */
+    @Inject
+    public ReadExecutor(@Named("read-max-concurrency") int maxConcurrency,
+                        @Named("read-max-pending") int maxPending,
+                        @Named("read-timeout") long timeout,
+                        @Named("read-time-unit") TimeUnit unit) {
+        if (maxConcurrency < 1 || maxPending < maxConcurrency) {
+            throw new IllegalArgumentException("The concurrency must be positive and not exceed the pending reads!");
+        }
+
+        ExecutorService virtualExecutor = newVirtualThreadExecutor();
+
+        this.virtual = virtualExecutor != null;
+        this.executor = virtual ? virtualExecutor : new ThreadPoolExecutor(maxConcurrency, maxConcurrency,
+                0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("Read Worker"));
+        this.permits = new Semaphore(maxConcurrency);
+        this.maxPending = maxPending;
+        this.timeout = unit.toMillis(timeout);
+    }
+
+    /**
+     * Creates an executor, which starts a virtual thread per task, if the runtime supports them.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sets the timeout of the reads of a query.
+     *
+     * @param key     The key of the query
+     * @param timeout The timeout, 0 for none
+     * @param unit    The unit of the timeout
+     */
+    public void setTimeout(QueryKey<?> key, long timeout, TimeUnit unit) {
+        timeouts.put(key, unit.toMillis(timeout));
+    }
+
+    /**
+     * @param key The key of the query
+     * @return The timeout of the reads of the query in milliseconds, 0 for none
+     */
+    public long getTimeout(QueryKey<?> key) {
+        Long timeout = timeouts.get(key);
+        return timeout == null ? this.timeout : timeout;
+    }
+
+    /**
+     * Submits a read.
+     *
+     * @param read    The read
+     * @param timeout The timeout in milliseconds, 0 for none
+     * @param <T>     The type of the result
+     * @return The future of the result, which fails if the read was rejected, failed or timed out
+     */
+    public <T> QueryFuture<T> submit(Callable<T> read, long timeout) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            return QueryFuture.failed(new RejectedExecutionException("Too many pending reads!"));
+        }
+
+        QueryFuture<T> future = new QueryFuture<T>();
+        ReadTask<T> task = new ReadTask<T>(read, future);
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // The task never runs, so it is never done
+            pending.decrementAndGet();
+            future.fail(e);
+            return future;
+        }
+
+        future.setTask(task);
+
+        if (timeout > 0) {
+            task.schedule(timeout);
+        }
+
+        return future;
+    }
+
+    private <T> void execute(Callable<T> read, QueryFuture<T> future) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            future.fail(e);
+            return;
+        }
+
+        try {
+            if (!future.isDone()) {
+                future.complete(read.call());
+            }
+        } catch (Throwable e) {
+            future.fail(e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return Whether the reads run on virtual threads
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @return The number of running and waiting reads
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the executor and interrupts the running reads.
+     */
+    @Override
+    public boolean close() {
+        executor.shutdownNow();
+        watchdog.shutdownNow();
+        return true;
+    }
+
+    /**
+     * Represents a submitted read, which leaves the pending reads once it completed or was cancelled, even if it
+     * never started
+     */
+    private final class ReadTask<T> extends FutureTask<Void> {
+        private final QueryFuture<T> future;
+        private volatile Timeout timeout;
+
+        private ReadTask(final Callable<T> read, final QueryFuture<T> future) {
+            super(new Runnable() {
+                @Override
+                public void run() {
+                    execute(read, future);
+                }
+            }, null);
+            this.future = future;
+        }
+
+        void schedule(long millis) {
+            Timeout timeout = new Timeout(this);
+            timeout.timer = watchdog.schedule(timeout, millis, TimeUnit.MILLISECONDS);
+            this.timeout = timeout;
+
+            // The read may have completed before the timeout was set
+            if (isDone()) {
+                timeout.clear();
+            }
+        }
+
+        @Override
+        protected void done() {
+            pending.decrementAndGet();
+
+            Timeout timeout = this.timeout;
+
+            if (timeout != null) {
+                timeout.clear();
+            }
+        }
+    }
+
+    /**
+     * Represents the timeout of a read. A cancelled timeout stays scheduled until its delay passed, so it releases
+     * the read once it was cleared.
+     */
+    private static final class Timeout implements Runnable {
+        private volatile ReadTask<?> task;
+        private volatile Future<?> timer;
+
+        private Timeout(ReadTask<?> task) {
+            this.task = task;
+        }
+
+        void clear() {
+            task = null;
+
+            Future<?> timer = this.timer;
+
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            ReadTask<?> task = this.task;
+
+            if (task != null && task.future.fail(new TimeoutException("The read took longer than its timeout!"))) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger threads = new AtomicInteger();
+
+        private DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + " " + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
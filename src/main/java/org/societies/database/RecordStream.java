@@ -0,0 +1,109 @@
+package org.societies.database;
+
+import org.jooq.Cursor;
+import org.jooq.Record;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Represents a stream of records, which are fetched one after another and never held all at once.
+ * <p>
+ * The stream holds its connection until it is exhausted or closed, so it should always be closed in a finally
+ * block. Streams, which are abandoned without closing, release their connection once they are garbage collected.
+ * This is not thread safe.
+ *
+ * @param <R> The type of the records
+ */
+public final class RecordStream<R extends Record> implements Iterable<R>, Closeable {
+
+    private final Cursor<R> cursor;
+    private int fetched;
+
+    RecordStream(Cursor<R> cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return Whether a next record is available, closes the stream if not
+     */
+    public boolean hasNext() {
+        if (cursor.isClosed()) {
+            return false;
+        }
+
+        if (cursor.hasNext()) {
+            return true;
+        }
+
+        close();
+        return false;
+    }
+
+    /**
+     * @return The next record
+     * @throws NoSuchElementException If the stream is exhausted or closed
+     */
+    public R next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        fetched++;
+        return cursor.fetchOne();
+    }
+
+    /**
+     * @return An iterator over the remaining records of this stream
+     */
+    @Override
+    public Iterator<R> iterator() {
+        return new Iterator<R>() {
+            @Override
+            public boolean hasNext() {
+                return RecordStream.this.hasNext();
+            }
+
+            @Override
+            public R next() {
+                return RecordStream.this.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @return The number of records fetched so far
+     */
+    public int getFetched() {
+        return fetched;
+    }
+
+    public boolean isClosed() {
+        return cursor.isClosed();
+    }
+
+    /**
+     * Closes the result set and releases the connection.
+     */
+    @Override
+    public void close() {
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            close();
+        } finally {
+            super.finalize();
+        }
+    }
+}
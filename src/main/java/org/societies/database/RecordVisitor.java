@@ -0,0 +1,17 @@
+package org.societies.database;
+
+import org.jooq.Record;
+
+/**
+ * Represents a visitor of streamed records
+ *
+ * @param <R> The type of the records
+ */
+public interface RecordVisitor<R extends Record> {
+
+    /**
+     * @param record The record, which is only valid during this call if it is mutated by the visitor
+     * @return Whether the next record should be visited, false to stop the stream
+     */
+    boolean visit(R record);
+}
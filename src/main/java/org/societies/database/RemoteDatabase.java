@@ -57,8 +57,8 @@ public class RemoteDatabase extends AbstractDatabase {
     @Override
     public HikariConfig createConfig() {
         HikariConfig config = new HikariConfig();
-        config.setMaximumPoolSize(MAX_CONNECTIONS);
-        config.setMaxLifetime(MAX_LIFETIME);
+        getPoolProfile().apply(config);
+        getPoolProfile().applyDriverProperties(config, getDialect());
         config.setDataSourceClassName(getDataSourceClass());
         config.addDataSourceProperty("serverName", host);
         config.addDataSourceProperty("port", port);
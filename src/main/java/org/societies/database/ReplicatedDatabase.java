@@ -0,0 +1,387 @@
+package org.societies.database;
+
+import org.jooq.DSLContext;
+import org.jooq.ExecuteContext;
+import org.jooq.ExecuteListenerProvider;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultExecuteListener;
+import org.jooq.impl.DefaultExecuteListenerProvider;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents a Database, which writes to a primary and reads from replicas.
+ * <p>
+ * Every write, including the batches of the {@link org.societies.database.data.DataWorker}, uses the primary.
+ * Reads of the {@link QueryProvider} are spread over the replicas, which lag behind the primary by at most the
+ * maximum lag. If every replica lags too much, reads fall back to the primary. A thread may
+ * {@link #pinPrimary(long, TimeUnit) pin} its reads to the primary to read its own writes.
+ */
+@Singleton
+public class ReplicatedDatabase implements Database, RoutingDSLProvider {
+
+    private final Database primary;
+    private final Replica[] replicas;
+
+    private final ReplicaSelection selection;
+    private final long maxLag;
+    private final long lagCheckInterval;
+    private volatile LagProbe lagProbe = LagProbe.MYSQL;
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final ThreadLocal<Long> pinned = new ThreadLocal<Long>();
+
+    private ScheduledExecutorService monitor;
+
+    /**
+     * @param primary          The database to write to
+     * @param replicas         The databases to read from
+     * @param selection        The way to select a replica for a read
+     * @param maxLag           The maximum lag of a replica, which serves reads
+     * @param lagCheckInterval The interval of checking the lag of the replicas, 0 to check only on
+     *                         {@link #updateLag()}
+     * @param unit             The unit of the times
+     */
+    @Inject
+    public ReplicatedDatabase(@Named("primary-database") Database primary,
+                              @Named("replica-databases") List<Database> replicas,
+                              @Named("replica-selection") ReplicaSelection selection,
+                              @Named("replica-max-lag") long maxLag,
+                              @Named("replica-lag-check-interval") long lagCheckInterval,
+                              @Named("replica-time-unit") TimeUnit unit) {
+        this.primary = primary;
+        this.replicas = new Replica[replicas.size()];
+        this.selection = selection;
+        this.maxLag = unit.toMillis(maxLag);
+        this.lagCheckInterval = unit.toMillis(lagCheckInterval);
+
+        for (int i = 0; i < this.replicas.length; i++) {
+            this.replicas[i] = new Replica(replicas.get(i));
+        }
+    }
+
+    /**
+     * Initializes the primary and every replica, which was not initialized yet.
+     */
+    @Override
+    public synchronized void initDatabase() {
+        init(primary);
+
+        for (Replica replica : replicas) {
+            init(replica.database);
+            replica.attach();
+        }
+
+        if (lagCheckInterval > 0 && monitor == null && replicas.length > 0) {
+            monitor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Replica Lag Monitor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            monitor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    updateLag();
+                }
+            }, 0, lagCheckInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void init(Database database) {
+        if (database.getDSLContext() == null) {
+            database.initDatabase();
+        }
+    }
+
+    /**
+     * Checks the lag of every replica. Replicas, which lag too much or fail to report their lag, stop serving reads
+     * until the next check.
+     */
+    public void updateLag() {
+        LagProbe lagProbe = this.lagProbe;
+
+        for (Replica replica : replicas) {
+            DSLContext context = replica.context;
+
+            if (context == null) {
+                continue;
+            }
+
+            long lag;
+
+            try {
+                lag = lagProbe.getLag(context);
+            } catch (DataAccessException e) {
+                lag = -1;
+            }
+
+            replica.lag = lag;
+            replica.available = lag >= 0 && lag <= maxLag;
+        }
+    }
+
+    /**
+     * @return The context of the primary, which is used for writes
+     */
+    @Override
+    public DSLContext getDSLContext() {
+        return primary.getDSLContext();
+    }
+
+    /**
+     * @return The context of a replica or of the primary, if the current thread is pinned or no replica is available
+     */
+    @Override
+    public DSLContext getReadDSLContext() {
+        if (isPinned()) {
+            return getDSLContext();
+        }
+
+        Replica replica = selectReplica();
+        return replica == null ? getDSLContext() : replica.context;
+    }
+
+    private Replica selectReplica() {
+        int length = replicas.length;
+
+        if (length == 0) {
+            return null;
+        }
+
+        int start = (next.getAndIncrement() & Integer.MAX_VALUE) % length;
+        Replica selected = null;
+
+        for (int i = 0; i < length; i++) {
+            Replica replica = replicas[(start + i) % length];
+
+            if (!replica.available || replica.context == null) {
+                continue;
+            }
+
+            if (selection == ReplicaSelection.ROUND_ROBIN) {
+                return replica;
+            }
+
+            if (selected == null || replica.active.get() < selected.active.get()) {
+                selected = replica;
+            }
+        }
+
+        return selected;
+    }
+
+    /**
+     * Routes the reads of the current thread to the primary for a while, for example after publishing data,
+     * which the thread reads again.
+     *
+     * @param duration The duration, which should exceed the time until the data is written and replicated
+     * @param unit     The unit of the duration
+     */
+    public void pinPrimary(long duration, TimeUnit unit) {
+        pinned.set(System.currentTimeMillis() + unit.toMillis(duration));
+    }
+
+    /**
+     * Routes the reads of the current thread to the replicas again.
+     */
+    public void unpinPrimary() {
+        pinned.remove();
+    }
+
+    /**
+     * @return Whether the reads of the current thread are routed to the primary
+     */
+    public boolean isPinned() {
+        Long until = pinned.get();
+
+        if (until == null) {
+            return false;
+        }
+
+        if (System.currentTimeMillis() >= until) {
+            pinned.remove();
+            return false;
+        }
+
+        return true;
+    }
+
+    public void setLagProbe(LagProbe lagProbe) {
+        this.lagProbe = lagProbe;
+    }
+
+    /**
+     * @return The number of replicas, which serve reads
+     */
+    public int getAvailableReplicas() {
+        int available = 0;
+
+        for (Replica replica : replicas) {
+            if (replica.available && replica.context != null) {
+                available++;
+            }
+        }
+
+        return available;
+    }
+
+    /**
+     * @param index The index of the replica
+     * @return The last measured lag of the replica in milliseconds, -1 if unknown
+     */
+    public long getLag(int index) {
+        return replicas[index].lag;
+    }
+
+    /**
+     * @param index The index of the replica
+     * @return The number of reads, which are currently executed on the replica
+     */
+    public int getActiveReads(int index) {
+        return replicas[index].active.get();
+    }
+
+    public Database getPrimary() {
+        return primary;
+    }
+
+    /**
+     * @return A connection to the primary
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        return primary.getConnection();
+    }
+
+    /**
+     * @return The data source of the primary
+     */
+    @Override
+    public DataSource getDataSource() {
+        return primary.getDataSource();
+    }
+
+    @Override
+    public synchronized boolean close() {
+        if (monitor != null) {
+            monitor.shutdownNow();
+            monitor = null;
+        }
+
+        boolean closed = true;
+
+        for (Replica replica : replicas) {
+            closed &= replica.database.close();
+        }
+
+        return primary.close() && closed;
+    }
+
+    /**
+     * Represents the way to select a replica for a read
+     */
+    public enum ReplicaSelection {
+        /**
+         * The replicas are used in turn
+         */
+        ROUND_ROBIN,
+        /**
+         * The replica with the fewest reads in progress is used
+         */
+        LEAST_LOADED
+    }
+
+    /**
+     * Represents a way to measure the lag of a replica
+     */
+    public interface LagProbe {
+
+        /**
+         * Reads the Seconds_Behind_Master of MySQL. A database, which does not replicate, has no lag.
+         */
+        LagProbe MYSQL = new LagProbe() {
+            @Override
+            public long getLag(DSLContext replica) {
+                Result<Record> status = replica.fetch("SHOW SLAVE STATUS");
+
+                if (status.isEmpty()) {
+                    return 0;
+                }
+
+                Object seconds = status.get(0).getValue("Seconds_Behind_Master");
+
+                if (seconds == null) {
+                    return -1;
+                }
+
+                return TimeUnit.SECONDS.toMillis(((Number) seconds).longValue());
+            }
+        };
+
+        /**
+         * @param replica The context of the replica
+         * @return The lag in milliseconds or -1 if the replica does not replicate at the moment
+         * @throws DataAccessException If the lag could not be queried
+         */
+        long getLag(DSLContext replica) throws DataAccessException;
+    }
+
+    private static final class Replica {
+        private final Database database;
+        private final AtomicInteger active = new AtomicInteger();
+
+        private volatile DSLContext context;
+        private volatile boolean available = true;
+        private volatile long lag = -1;
+
+        private Replica(Database database) {
+            this.database = database;
+        }
+
+        /**
+         * Creates a context, which counts the reads in progress.
+         */
+        private void attach() {
+            if (context != null) {
+                return;
+            }
+
+            DSLContext parent = database.getDSLContext();
+            ExecuteListenerProvider[] parents = parent.configuration().executeListenerProviders();
+            ExecuteListenerProvider[] providers = new ExecuteListenerProvider[parents.length + 1];
+
+            System.arraycopy(parents, 0, providers, 0, parents.length);
+            providers[parents.length] = new DefaultExecuteListenerProvider(new DefaultExecuteListener() {
+                @Override
+                public void start(ExecuteContext ctx) {
+                    active.incrementAndGet();
+                }
+
+                @Override
+                public void end(ExecuteContext ctx) {
+                    active.decrementAndGet();
+                }
+            });
+
+            context = DSL.using(parent.configuration().derive(providers));
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package org.societies.database;
+
+import org.jetbrains.annotations.Nullable;
+import org.jooq.AttachableInternal;
+import org.jooq.Configuration;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultConfiguration;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents a read-through cache of query results, keyed by {@link QueryKey} and bound values.
+ * <p>
+ * Only keys registered with {@link #cache(QueryKey, long, TimeUnit, Table[])} are cached. The results are held in
+ * several independently locked LRU segments, so concurrent readers never contend on a single lock.
+ * Invalidating a table bumps the generation of every key reading from it, results of older generations are
+ * treated as misses and evicted over time. Table names are compared ignoring their case.
+ * <p>
+ * Results are copied when they are cached and when they are read, so readers never share records.
+ */
+public final class ResultCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final ConcurrentHashMap<QueryKey<?>, Policy> policies = new ConcurrentHashMap<QueryKey<?>, Policy>();
+    private final ConcurrentHashMap<String, CopyOnWriteArrayList<Policy>> readers =
+            new ConcurrentHashMap<String, CopyOnWriteArrayList<Policy>>();
+    private final ConcurrentHashMap<QueryKey<?>, String[]> writers = new ConcurrentHashMap<QueryKey<?>, String[]>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxSize The maximum number of cached results
+     */
+    @Inject
+    public ResultCache(@Named("result-cache-max-size") int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The maximum size must be positive!");
+        }
+
+        int segmentSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize, evictions);
+        }
+    }
+
+    /**
+     * Caches the results of a query.
+     *
+     * @param key    The key of the query
+     * @param ttl    The time to live of a result
+     * @param unit   The unit of the time to live
+     * @param tables The tables the query reads from, writes to them invalidate the results
+     */
+    public void cache(QueryKey<?> key, long ttl, TimeUnit unit, Table<?>... tables) {
+        Policy policy = new Policy(unit.toNanos(ttl));
+        policies.put(key, policy);
+
+        for (Table<?> table : tables) {
+            String name = normalize(table.getName());
+            CopyOnWriteArrayList<Policy> policies = readers.get(name);
+
+            if (policies == null) {
+                CopyOnWriteArrayList<Policy> created = new CopyOnWriteArrayList<Policy>();
+                policies = readers.putIfAbsent(name, created);
+
+                if (policies == null) {
+                    policies = created;
+                }
+            }
+
+            policies.add(policy);
+        }
+    }
+
+    /**
+     * Registers further tables a query writes to, for example by triggers.
+     * The table in the SQL of a query is invalidated by the {@link QueryProvider} without registering it.
+     *
+     * @param key    The key of the query
+     * @param tables The tables the query writes to
+     */
+    public void writes(QueryKey<?> key, Table<?>... tables) {
+        String[] names = new String[tables.length];
+
+        for (int i = 0; i < tables.length; i++) {
+            names[i] = normalize(tables[i].getName());
+        }
+
+        writers.put(key, names);
+    }
+
+    public boolean isCached(QueryKey<?> key) {
+        return policies.containsKey(key);
+    }
+
+    /**
+     * @param key The key of the query
+     * @return The current generation of the key, which has to be passed to {@link #put} after fetching
+     */
+    public long getGeneration(QueryKey<?> key) {
+        Policy policy = policies.get(key);
+        return policy == null ? -1 : policy.generation.get();
+    }
+
+    /**
+     * Gets a cached result.
+     *
+     * @param key    The key of the query
+     * @param values The bound values
+     * @param <R>    The type of the records
+     * @return A copy of the result or null if it is not cached, expired or invalidated
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <R extends Record> Result<R> get(QueryKey<?> key, Object[] values) {
+        Policy policy = policies.get(key);
+
+        if (policy == null) {
+            return null;
+        }
+
+        ResultKey resultKey = new ResultKey(key, values);
+        Segment segment = segmentOf(resultKey);
+        CachedResult cached;
+
+        synchronized (segment) {
+            cached = segment.get(resultKey);
+        }
+
+        if (cached == null || cached.generation != policy.generation.get() || System.nanoTime() - cached.expires > 0) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return copy((Result<R>) cached.result);
+    }
+
+    /**
+     * Caches a fetched result, unless it was invalidated while it was fetched.
+     *
+     * @param key        The key of the query
+     * @param values     The bound values
+     * @param result     The result
+     * @param generation The generation of the key before the result was fetched
+     */
+    public void put(QueryKey<?> key, Object[] values, Result<?> result, long generation) {
+        Policy policy = policies.get(key);
+
+        if (policy == null || policy.generation.get() != generation) {
+            return;
+        }
+
+        ResultKey resultKey = new ResultKey(key, values.clone());
+        Segment segment = segmentOf(resultKey);
+        CachedResult cached = new CachedResult(copy(result), generation, System.nanoTime() + policy.ttl);
+
+        synchronized (segment) {
+            segment.put(resultKey, cached);
+        }
+    }
+
+    /**
+     * Invalidates the results of all queries, which read from the tables the query writes to.
+     *
+     * @param key The key of the writing query
+     */
+    public void invalidate(QueryKey<?> key) {
+        String[] tables = writers.get(key);
+
+        if (tables == null) {
+            return;
+        }
+
+        for (String table : tables) {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * Invalidates the results of all queries, which read from a table.
+     *
+     * @param table The name of the table
+     */
+    public void invalidate(String table) {
+        CopyOnWriteArrayList<Policy> policies = readers.get(normalize(table));
+
+        if (policies == null) {
+            return;
+        }
+
+        for (Policy policy : policies) {
+            policy.generation.incrementAndGet();
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Copies a result and its records, which stay attached to the configuration of the result.
+     */
+    @SuppressWarnings("unchecked")
+    private static <R extends Record> Result<R> copy(Result<R> result) {
+        Configuration configuration = ((AttachableInternal) result).configuration();
+        Result<R> copy = (Result<R>) (configuration == null ? DSL.using(new DefaultConfiguration()) : DSL.using(configuration))
+                .newResult(result.fields());
+
+        for (R record : result) {
+            R copied = (R) record.original();
+            copied.fromArray(record.intoArray());
+            copied.changed(false);
+            copy.add(copied);
+        }
+
+        return copy;
+    }
+
+    private static String normalize(String table) {
+        return table.toLowerCase(Locale.ENGLISH);
+    }
+
+    private Segment segmentOf(ResultKey key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private static final class Policy {
+        private final long ttl;
+        private final AtomicLong generation = new AtomicLong();
+
+        private Policy(long ttl) {
+            this.ttl = ttl;
+        }
+    }
+
+    private static final class CachedResult {
+        private final Result<?> result;
+        private final long generation;
+        private final long expires;
+
+        private CachedResult(Result<?> result, long generation, long expires) {
+            this.result = result;
+            this.generation = generation;
+            this.expires = expires;
+        }
+    }
+
+    private static final class ResultKey {
+        private final QueryKey<?> key;
+        private final Object[] values;
+        private final int hash;
+
+        private ResultKey(QueryKey<?> key, Object[] values) {
+            this.key = key;
+            this.values = values;
+            this.hash = 31 * key.hashCode() + Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof ResultKey)) {
+                return false;
+            }
+
+            ResultKey other = (ResultKey) o;
+            return key == other.key && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A LRU map, which is only accessed while holding its own lock
+     */
+    private static final class Segment extends LinkedHashMap<ResultKey, CachedResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+        private final AtomicLong evictions;
+
+        private Segment(int maxSize, AtomicLong evictions) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ResultKey, CachedResult> eldest) {
+            if (size() > maxSize) {
+                evictions.incrementAndGet();
+                return true;
+            }
+
+            return false;
+        }
+    }
+}
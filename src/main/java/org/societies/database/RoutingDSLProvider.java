@@ -0,0 +1,15 @@
+package org.societies.database;
+
+import org.jooq.DSLContext;
+
+/**
+ * Represents a DSLProvider, which routes reads to a different context than writes.
+ * {@link #getDSLContext()} is used for writes.
+ */
+public interface RoutingDSLProvider extends DSLProvider {
+
+    /**
+     * @return The context to execute the next read on
+     */
+    DSLContext getReadDSLContext();
+}
@@ -13,23 +13,42 @@ public class URLDatabase extends AbstractDatabase {
     private final String url;
     private final String driverClass;
 
+    /**
+     * Creates and initializes a database with the {@link PoolProfile#DEFAULT default pool profile}.
+     * An injected {@link PoolProfile} restarts the pool with its settings.
+     */
     @Inject
     public URLDatabase(@Named("db-url") String url,
                        @Named(DB_DATASOURCE_CLASS) String dataSourceClass,
                        @Named("db-driver") String driverClass,
                        SQLDialect dialect) {
+        this(url, dataSourceClass, driverClass, dialect, PoolProfile.DEFAULT);
+    }
+
+    /**
+     * Creates and initializes a database.
+     *
+     * @param url             The JDBC url
+     * @param dataSourceClass The class of the datasource to use
+     * @param driverClass     The class of the driver
+     * @param dialect         The sql dialect to use
+     * @param poolProfile     The profile of the connection pool
+     */
+    public URLDatabase(String url, String dataSourceClass, String driverClass, SQLDialect dialect,
+                       PoolProfile poolProfile) {
         super(dataSourceClass, dialect);
         this.url = url;
         this.driverClass = driverClass;
 
+        setPoolProfile(poolProfile);
         initDatabase();
     }
 
     @Override
     public HikariConfig createConfig() {
         HikariConfig config = new HikariConfig();
-        config.setMaximumPoolSize(MAX_CONNECTIONS);
-        config.setMaxLifetime(MAX_LIFETIME);
+        getPoolProfile().apply(config);
+        getPoolProfile().applyDriverProperties(config, getDialect());
 
         config.setJdbcUrl(url);
         config.setDriverClassName(driverClass);
@@ -2,12 +2,51 @@ package org.societies.database;
 
 import org.jooq.Converter;
 
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Converts UUIDs to 16 bytes.
+ * <p>
+ * The {@link Layout#PLAIN plain} layout stores the UUID big-endian. The {@link Layout#SWAPPED swapped} layout moves
+ * the time fields of a version 1 UUID to the front, like {@code UUID_TO_BIN(uuid, 1)} of MySQL, so time based
+ * keys are inserted in order instead of being scattered across the index. UUIDs of
+ * {@link #generateOrdered() version 7} start with their time already and are stored in the plain layout.
+ */
 public class UUIDConverter implements Converter<byte[], UUID> {
     public static final int BYTE_LENGTH = 8;
     public static final int UUID_LENGTH = 16;
 
+    public static final UUIDConverter PLAIN = new UUIDConverter(Layout.PLAIN);
+    public static final UUIDConverter SWAPPED = new UUIDConverter(Layout.SWAPPED);
+
+    private static final Random RANDOM = new SecureRandom();
+
+    /** The unix time in milliseconds and the counter of the last generated version 7 UUID */
+    private static final AtomicLong LAST_ORDERED = new AtomicLong();
+    /** The gregorian time in 100 nanoseconds of the last generated version 1 UUID */
+    private static final AtomicLong LAST_TIME_BASED = new AtomicLong();
+
+    /** The 100 nanoseconds between the gregorian and the unix epoch */
+    private static final long GREGORIAN_OFFSET = 0x01B21DD213814000L;
+
+    /** The clock sequence and the random node with the multicast bit set of version 1 UUIDs */
+    private static final long TIME_BASED_LSB = (RANDOM.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000010000000000L;
+
+    private final Layout layout;
+
+    public UUIDConverter() {
+        this(Layout.PLAIN);
+    }
+
+    public UUIDConverter(Layout layout) {
+        this.layout = layout;
+    }
+
     @Override
     public UUID from(byte[] uuid) {
         if (uuid == null) {
@@ -18,17 +57,40 @@ public class UUIDConverter implements Converter<byte[], UUID> {
             throw new IllegalArgumentException("byte[] must have 16 bytes!");
         }
 
+        return from(uuid, 0);
+    }
+
+    /**
+     * Reads a UUID.
+     *
+     * @param src    The source
+     * @param offset The offset of the UUID in the source
+     * @return The UUID
+     */
+    public UUID from(byte[] src, int offset) {
         long msb = 0;
         long lsb = 0;
 
         for (int i = 0; i < 8; i++) {
-            msb = (msb << 8) | (uuid[i] & 0xff);
+            msb = (msb << 8) | (src[offset + i] & 0xff);
         }
         for (int i = 8; i < 16; i++) {
-            lsb = (lsb << 8) | (uuid[i] & 0xff);
+            lsb = (lsb << 8) | (src[offset + i] & 0xff);
         }
 
-        return new UUID(msb, lsb);
+        return new UUID(decode(msb), lsb);
+    }
+
+    /**
+     * Reads a UUID at the position of a buffer and advances it.
+     *
+     * @param src The source
+     * @return The UUID
+     */
+    public UUID from(ByteBuffer src) {
+        long msb = src.getLong();
+        long lsb = src.getLong();
+        return new UUID(decode(msb), lsb);
     }
 
     @Override
@@ -37,16 +99,141 @@ public class UUIDConverter implements Converter<byte[], UUID> {
             return null;
         }
 
-        long most = uuid.getMostSignificantBits();
-        long least = uuid.getLeastSignificantBits();
-
         byte[] bytes = new byte[UUID_LENGTH];
+        to(uuid, bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * Writes a UUID without allocating.
+     *
+     * @param uuid   The UUID
+     * @param dst    The destination
+     * @param offset The offset in the destination
+     */
+    public void to(UUID uuid, byte[] dst, int offset) {
+        long most = encode(uuid.getMostSignificantBits());
+        long least = uuid.getLeastSignificantBits();
 
         for (int i = 0; i < BYTE_LENGTH; i++) {
-            bytes[i] = (byte) (most >>> ((7 - i) * BYTE_LENGTH));
-            bytes[BYTE_LENGTH + i] = (byte) (least >>> ((7 - i) * BYTE_LENGTH));
+            dst[offset + i] = (byte) (most >>> ((7 - i) * BYTE_LENGTH));
+            dst[offset + BYTE_LENGTH + i] = (byte) (least >>> ((7 - i) * BYTE_LENGTH));
         }
-        return bytes;
+    }
+
+    /**
+     * Writes a UUID at the position of a buffer and advances it.
+     *
+     * @param uuid The UUID
+     * @param dst  The destination, which must be big-endian
+     */
+    public void to(UUID uuid, ByteBuffer dst) {
+        dst.putLong(encode(uuid.getMostSignificantBits()));
+        dst.putLong(uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Writes several UUIDs back to back.
+     *
+     * @param uuids  The UUIDs
+     * @param dst    The destination, which must hold 16 bytes per UUID
+     * @param offset The offset in the destination
+     */
+    public void to(List<UUID> uuids, byte[] dst, int offset) {
+        for (int i = 0; i < uuids.size(); i++) {
+            to(uuids.get(i), dst, offset + i * UUID_LENGTH);
+        }
+    }
+
+    /**
+     * Converts several UUIDs, for example to bind them as a batch.
+     * The arrays of the destination are reused if they have 16 bytes.
+     *
+     * @param uuids The UUIDs
+     * @param dst   The destination, which must be at least as long as the UUIDs
+     */
+    public void to(UUID[] uuids, byte[][] dst) {
+        for (int i = 0; i < uuids.length; i++) {
+            if (uuids[i] == null) {
+                dst[i] = null;
+                continue;
+            }
+
+            if (dst[i] == null || dst[i].length != UUID_LENGTH) {
+                dst[i] = new byte[UUID_LENGTH];
+            }
+
+            to(uuids[i], dst[i], 0);
+        }
+    }
+
+    private long encode(long msb) {
+        if (layout == Layout.PLAIN) {
+            return msb;
+        }
+
+        // time_low, time_mid, time_hi to time_hi, time_mid, time_low
+        return (msb << 48) | ((msb & 0xFFFF0000L) << 16) | (msb >>> 32);
+    }
+
+    private long decode(long msb) {
+        if (layout == Layout.PLAIN) {
+            return msb;
+        }
+
+        return (msb << 32) | ((msb >>> 16) & 0xFFFF0000L) | (msb >>> 48);
+    }
+
+    /**
+     * Generates a version 7 UUID, which starts with the unix time in milliseconds.
+     * UUIDs generated by this process are strictly increasing, even within the same millisecond.
+     *
+     * @return The UUID
+     */
+    public static UUID generateOrdered() {
+        long now = System.currentTimeMillis() << 12;
+        long next;
+
+        // The lower 12 bits count the UUIDs of the same millisecond and overflow into the time
+        while (true) {
+            long last = LAST_ORDERED.get();
+            next = now > last ? now : last + 1;
+
+            if (LAST_ORDERED.compareAndSet(last, next)) {
+                break;
+            }
+        }
+
+        long msb = ((next >>> 12) << 16) | 0x7000L | (next & 0xFFFL);
+        long lsb = (RANDOM.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     * Generates a version 1 UUID with a random node, which should be stored in the {@link Layout#SWAPPED} layout.
+     * UUIDs generated by this process are strictly increasing in time.
+     *
+     * @return The UUID
+     */
+    public static UUID generateTimeBased() {
+        long now = System.currentTimeMillis() * 10000 + GREGORIAN_OFFSET;
+        long next;
+
+        while (true) {
+            long last = LAST_TIME_BASED.get();
+            next = now > last ? now : last + 1;
+
+            if (LAST_TIME_BASED.compareAndSet(last, next)) {
+                break;
+            }
+        }
+
+        long msb = (next << 32) | ((next >>> 16) & 0xFFFF0000L) | 0x1000L | ((next >>> 48) & 0xFFFL);
+        return new UUID(msb, TIME_BASED_LSB);
+    }
+
+    public Layout getLayout() {
+        return layout;
     }
 
     @Override
@@ -58,4 +245,18 @@ public class UUIDConverter implements Converter<byte[], UUID> {
     public Class<UUID> toType() {
         return UUID.class;
     }
+
+    /**
+     * Represents the order of the bytes of a stored UUID
+     */
+    public enum Layout {
+        /**
+         * The bytes of the UUID in order
+         */
+        PLAIN,
+        /**
+         * The time fields of a version 1 UUID swapped to the front, as {@code UUID_TO_BIN(uuid, 1)}
+         */
+        SWAPPED
+    }
 }
@@ -0,0 +1,49 @@
+package org.societies.database.data;
+
+import org.societies.database.data.queue.Data;
+import org.societies.database.data.queue.DataCallback;
+import org.societies.database.data.queue.DataFuture;
+
+/**
+ * Represents a DataPublisher
+ */
+public interface DataPublisher {
+
+    void publishBatch(Data data);
+
+    void publishSingle(Data data);
+
+    /**
+     * Publishes data to be executed as part of a batch and reports its outcome.
+     *
+     * @param data     The data
+     * @param callback The callback, which is called once the batch was committed or the data failed
+     */
+    void publishBatch(Data data, DataCallback callback);
+
+    /**
+     * Publishes data to be executed on its own and reports its outcome.
+     *
+     * @param data     The data
+     * @param callback The callback, which is called once the data was committed or failed
+     */
+    void publishSingle(Data data, DataCallback callback);
+
+    /**
+     * Publishes data to be executed as part of a batch.
+     *
+     * @param data The data
+     * @return A future, which completes once the batch was committed
+     */
+    DataFuture submitBatch(Data data);
+
+    /**
+     * Publishes data to be executed on its own.
+     *
+     * @param data The data
+     * @return A future, which completes once the data was committed
+     */
+    DataFuture submitSingle(Data data);
+
+    void stop() throws InterruptedException;
+}
@@ -2,104 +2,304 @@ package org.societies.database.data;
 
 import org.jooq.DSLContext;
 import org.societies.database.DSLProvider;
+import org.societies.database.QueryProvider;
 import org.societies.database.data.queue.Data;
+import org.societies.database.data.queue.DataCallback;
 import org.societies.database.data.queue.DataException;
+import org.societies.database.data.queue.DataFuture;
+import org.societies.database.data.queue.Quarantine;
 import org.societies.database.data.queue.Queue;
+import org.societies.database.data.queue.TrackedData;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Represents a DataWorker
+ * <p>
+ * Producers hand their data over through a lock-free {@link Inbox}, so publishing never waits for the database.
+ * The worker thread drains the inbox into its {@link Queue}, which is only ever touched by the worker itself.
+ * While idle it parks until new data arrives or the next batch of the queue reaches its deadline.
  */
 @Singleton
-public final class DataWorker implements Runnable {
+public final class DataWorker implements Runnable, DataPublisher {
     private final Thread.UncaughtExceptionHandler exceptionHandler;
     private final DSLProvider dslProvider;
 
     private final Queue dataQueue;
+    private final Inbox inbox;
 
-    private final ReentrantLock lock = new ReentrantLock();
-    private final Condition idle = lock.newCondition();
-    private final Condition ready = lock.newCondition();
+    /** Flushes which wait for the queue to become empty, only touched by the worker */
+    private final ArrayList<CountDownLatch> flushes = new ArrayList<CountDownLatch>();
 
+    /** The time in milliseconds {@link #stop()} waits for the queue to drain */
+    public static final long DEFAULT_STOP_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+    private volatile Thread thread;
+    private volatile boolean parked;
     private volatile boolean running = true;
 
     @Inject
     public DataWorker(Thread.UncaughtExceptionHandler exceptionHandler, DSLProvider dslProvider, Queue dataQueue) {
+        this(exceptionHandler, dslProvider, dataQueue, new MpscInbox());
+    }
+
+    DataWorker(Thread.UncaughtExceptionHandler exceptionHandler, DSLProvider dslProvider, Queue dataQueue, Inbox inbox) {
         this.exceptionHandler = exceptionHandler;
         this.dslProvider = dslProvider;
         this.dataQueue = dataQueue;
+        this.inbox = inbox;
     }
 
     @Override
     public void run() {
+        thread = Thread.currentThread();
+        dataQueue.start();
+
         while (running) {
             try {
-                lock.lock();
-                boolean batchReady = dataQueue.isReady();
+                drain();
 
-                if (!batchReady) {
-                    idle.signal();
+                if (!flushes.isEmpty()) {
+                    // Data published after the flush is not held back until its deadline
+                    dataQueue.flushAll();
+                }
 
-                    try {
-                        ready.await();
-                    } catch (InterruptedException ignored) {
+                if (dataQueue.isFlushPending()) {
+                    dataQueue.flushReady();
+                }
+
+                if (!dataQueue.isReady()) {
+                    idle(dataQueue.getNextDeadline());
+
+                    if (Thread.interrupted()) {
                         break;
                     }
 
-                    batchReady = dataQueue.isReady();
+                    continue;
                 }
 
-                if (batchReady) {
-                    if (dataQueue.isFlushPending()) {
-                        dataQueue.flushReady();
+                dataQueue.execute(dslProvider.getDSLContext());
+            } catch (DataException e) {
+                exceptionHandler.uncaughtException(Thread.currentThread(), e);
+            }
+        }
+    }
+
+    private void drain() {
+        Submission submission;
+
+        while ((submission = inbox.poll()) != null) {
+            switch (submission.type) {
+                case Submission.BATCH:
+                    dataQueue.publishBatch(submission.data);
+                    break;
+                case Submission.SINGLE:
+                    dataQueue.publishSingle(submission.data);
+                    break;
+                case Submission.FLUSH:
+                    dataQueue.flushAll();
+
+                    if (submission.done != null) {
+                        flushes.add(submission.done);
                     }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Parks the worker until new data arrives or the next batch of the queue reaches its deadline.
+     *
+     * @param deadline The time in milliseconds to wake up at the latest
+     */
+    private void idle(long deadline) {
+        // Entries, which back off after a failure, are not flushed yet
+        if (dataQueue.isEmpty()) {
+            for (CountDownLatch flush : flushes) {
+                flush.countDown();
+            }
+
+            flushes.clear();
+        }
 
-                    dataQueue.execute(dslProvider.getDSLContext());
+        parked = true;
+
+        // Check again after announcing the park, a producer either sees the flag or we see its submission
+        if (inbox.isEmpty() && running) {
+            if (deadline == Long.MAX_VALUE) {
+                LockSupport.park(this);
+            } else {
+                long remaining = deadline - System.currentTimeMillis();
+
+                if (remaining > 0) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(remaining));
                 }
-            } catch (DataException e) {
-                exceptionHandler.uncaughtException(Thread.currentThread(), e);
-            } finally {
-                lock.unlock();
             }
         }
+
+        parked = false;
     }
 
-    public void publishBatch(Data data) {
-        try {
-            lock.lock();
-            dataQueue.publishBatch(data);
-            ready.signal();
-        } finally {
-            lock.unlock();
+    private void offer(Submission submission) {
+        if (submission.data != null) {
+            invalidate(submission.data);
+        }
+
+        inbox.offer(submission);
+
+        if (parked) {
+            LockSupport.unpark(thread);
         }
     }
 
+    /**
+     * Invalidates the cached results, which depend on the tables the data writes to.
+     */
+    private static void invalidate(Data data) {
+        QueryProvider provider = data.getQueryProvider();
 
-    public void publishSingle(Data data) {
-        try {
-            lock.lock();
-            dataQueue.publishSingle(data);
-            ready.signal();
-        } finally {
-            lock.unlock();
+        if (provider != null) {
+            provider.invalidate(data.getQueryKey());
         }
     }
 
-    public void stop() throws InterruptedException {
+    /**
+     * Publishes data to be executed as part of a batch.
+     * Reserves space in the capacity of the queue first, which may block the producer or drop the data.
+     *
+     * @param data The data
+     * @throws DataException If the queue is full
+     */
+    @Override
+    public void publishBatch(Data data) throws DataException {
+        if (dataQueue.getCapacity().acquire(data)) {
+            offer(new Submission(Submission.BATCH, data, null));
+        }
+    }
+
+    /**
+     * Publishes data to be executed on its own.
+     * Reserves space in the capacity of the queue first, which may block the producer or drop the data.
+     *
+     * @param data The data
+     * @throws DataException If the queue is full
+     */
+    @Override
+    public void publishSingle(Data data) throws DataException {
+        if (dataQueue.getCapacity().acquire(data)) {
+            offer(new Submission(Submission.SINGLE, data, null));
+        }
+    }
+
+    @Override
+    public void publishBatch(Data data, DataCallback callback) {
+        publish(data, callback, Submission.BATCH);
+    }
+
+    @Override
+    public void publishSingle(Data data, DataCallback callback) {
+        publish(data, callback, Submission.SINGLE);
+    }
+
+    /**
+     * Publishes quarantined data again, for example once the cause of the failures was fixed.
+     *
+     * @param quarantine The quarantine
+     * @return The number of published data
+     * @throws DataException If the queue is full
+     */
+    public int replay(Quarantine quarantine) throws DataException {
+        List<Quarantine.QuarantinedData> entries = quarantine.drain();
+
+        for (Quarantine.QuarantinedData entry : entries) {
+            if (entry.isSingle()) {
+                publishSingle(entry.getData());
+            } else {
+                publishBatch(entry.getData());
+            }
+        }
+
+        return entries.size();
+    }
+
+    @Override
+    public DataFuture submitBatch(Data data) {
+        DataFuture future = new DataFuture();
+        publishBatch(data, future);
+        return future;
+    }
+
+    @Override
+    public DataFuture submitSingle(Data data) {
+        DataFuture future = new DataFuture();
+        publishSingle(data, future);
+        return future;
+    }
+
+    /**
+     * Publishes tracked data, which reports a full queue to its callback instead of throwing.
+     */
+    private void publish(Data data, DataCallback callback, int type) {
+        TrackedData tracked = new TrackedData(data, callback);
+
         try {
-            lock.lock();
-            dataQueue.flushAll();
-            ready.signal();
-            idle.await();
-        } finally {
-            lock.unlock();
+            if (!dataQueue.getCapacity().acquire(tracked)) {
+                callback.failed(data, new DataException("The data was shed, because the queue is full!"));
+                return;
+            }
+        } catch (DataException e) {
+            callback.failed(data, e);
+            return;
         }
 
+        offer(new Submission(type, tracked, null));
+    }
+
+    /**
+     * Flushes every batch of the queue without waiting for the worker.
+     */
+    public void flush() {
+        offer(new Submission(Submission.FLUSH, null, null));
+    }
+
+    /**
+     * Flushes the queue and stops the worker once every entry was committed or quarantined, including entries, which
+     * back off after a failure. Waits at most {@link #DEFAULT_STOP_TIMEOUT} for this.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     * @see #stop(long, TimeUnit)
+     */
+    @Override
+    public void stop() throws InterruptedException {
+        stop(DEFAULT_STOP_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Flushes the queue and stops the worker once every entry was committed or quarantined, including entries, which
+     * back off after a failure. The worker stops after the timeout anyway, for example while the database is
+     * unavailable, and leaves the remaining entries in the queue.
+     *
+     * @param timeout The maximum time to wait for the queue to drain
+     * @param unit    The unit of the timeout
+     * @return Whether the queue was drained
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean stop(long timeout, TimeUnit unit) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        offer(new Submission(Submission.FLUSH, null, done));
+        boolean drained = done.await(timeout, unit);
+
         this.running = false;
+
+        // Wake up the worker, so it can leave the loop
+        LockSupport.unpark(thread);
+        return drained;
     }
 
     public static Thread createDefaultThread(DataWorker executor) {
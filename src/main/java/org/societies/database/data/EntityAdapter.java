@@ -0,0 +1,31 @@
+package org.societies.database.data;
+
+import org.jooq.Record;
+
+import java.util.UUID;
+
+/**
+ * Represents the mapping between the entities of an {@link EntityCache} and their rows
+ *
+ * @param <R> The type of the loaded records
+ * @param <V> The type of the entities
+ */
+public interface EntityAdapter<R extends Record, V> {
+
+    /**
+     * Creates an entity from its loaded record.
+     *
+     * @param record The record
+     * @return The entity
+     */
+    V read(R record);
+
+    /**
+     * Captures the current state of an entity as the values of the upsert query, in the order of its parameters.
+     *
+     * @param uuid   The UUID of the entity
+     * @param entity The entity
+     * @return The values to bind
+     */
+    Object[] write(UUID uuid, V entity);
+}
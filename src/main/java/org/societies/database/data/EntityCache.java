@@ -0,0 +1,495 @@
+package org.societies.database.data;
+
+import net.catharos.lib.core.lang.Closable;
+import org.jetbrains.annotations.Nullable;
+import org.jooq.Query;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.Select;
+import org.societies.database.QueryKey;
+import org.societies.database.QueryProvider;
+import org.societies.database.data.queue.CoalescingData;
+import org.societies.database.data.queue.Data;
+import org.societies.database.data.queue.DataCallback;
+import org.societies.database.data.queue.DataException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents a write-behind cache of entities, keyed by their UUID.
+ * <p>
+ * Entities are loaded once by a select and served from memory afterwards. Changed entities are marked dirty and
+ * written back as batched upserts through a {@link DataPublisher}, either {@link #flush() explicitly} or every
+ * flush interval. Entities are evicted once a segment is full or they were not accessed for a while, dirty
+ * entities are written back before. An entity stays readable until its write back was committed, so it is never
+ * loaded again in an outdated state.
+ * <p>
+ * Entities may be mutated in place, but {@link #modified(UUID)} has to be called after every change. Failed
+ * write backs are retried and quarantined by the queue of the publisher, not by this cache.
+ *
+ * @param <R> The type of the loaded records
+ * @param <V> The type of the entities
+ */
+public final class EntityCache<R extends Record, V> implements Closable {
+
+    private static final int SEGMENTS = 16;
+
+    private final DataPublisher publisher;
+    private final QueryProvider provider;
+    private final QueryKey<? extends Select<R>> loadKey;
+    private final QueryKey<? extends Query> storeKey;
+    private final EntityAdapter<R, V> adapter;
+
+    /** The time in nanoseconds an entity stays cached without being accessed, 0 if it never expires */
+    private final long expireAfterAccess;
+
+    private final Segment<V>[] segments;
+    /** The evicted entities, whose write back was not committed yet */
+    private final ConcurrentHashMap<UUID, Node<V>> evicting = new ConcurrentHashMap<UUID, Node<V>>();
+
+    @Nullable
+    private final ScheduledExecutorService flusher;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    /**
+     * @param publisher         The publisher of the write backs
+     * @param provider          The provider of the queries
+     * @param loadKey           The select, which loads an entity by its UUID
+     * @param storeKey          The upsert, which writes an entity back
+     * @param adapter           The mapping between the entities and their rows
+     * @param maxSize           The maximum number of cached entities
+     * @param expireAfterAccess The time an entity stays cached without being accessed, 0 if it never expires
+     * @param flushInterval     The interval of writing back dirty entities and evicting expired ones, 0 to only
+     *                          do that on {@link #flush()} and {@link #evictExpired()}
+     * @param unit              The unit of the times
+     */
+    @SuppressWarnings("unchecked")
+    public EntityCache(DataPublisher publisher, QueryProvider provider,
+                       QueryKey<? extends Select<R>> loadKey, QueryKey<? extends Query> storeKey,
+                       EntityAdapter<R, V> adapter, int maxSize,
+                       long expireAfterAccess, long flushInterval, TimeUnit unit) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The maximum size must be positive!");
+        }
+
+        this.publisher = publisher;
+        this.provider = provider;
+        this.loadKey = loadKey;
+        this.storeKey = storeKey;
+        this.adapter = adapter;
+        this.expireAfterAccess = unit.toNanos(expireAfterAccess);
+
+        int segmentSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        this.segments = new Segment[SEGMENTS];
+
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<V>(segmentSize);
+        }
+
+        if (flushInterval > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Entity Cache Flusher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            flusher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                    evictExpired();
+                }
+            }, flushInterval, flushInterval, unit);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Gets an entity from memory or loads it if it is not cached.
+     *
+     * @param uuid The UUID of the entity
+     * @return The entity or null if it does not exist
+     */
+    @Nullable
+    public V get(UUID uuid) {
+        Segment<V> segment = segmentOf(uuid);
+        Node<V> node;
+
+        synchronized (segment) {
+            node = segment.get(uuid);
+
+            if (node != null) {
+                node.accessed = System.nanoTime();
+            }
+        }
+
+        if (node != null) {
+            hits.incrementAndGet();
+            return node.entity;
+        }
+
+        node = evicting.get(uuid);
+
+        if (node != null) {
+            // The evicted entity is newer than its row until the write back was committed
+            hits.incrementAndGet();
+            return insert(node);
+        }
+
+        misses.incrementAndGet();
+
+        Result<R> result = provider.query(loadKey, uuid);
+
+        if (result.isEmpty()) {
+            return null;
+        }
+
+        return insert(new Node<V>(uuid, adapter.read(result.get(0)), false));
+    }
+
+    /**
+     * @param uuid The UUID of the entity
+     * @return The entity or null if it is not cached
+     */
+    @Nullable
+    public V getIfPresent(UUID uuid) {
+        Segment<V> segment = segmentOf(uuid);
+
+        synchronized (segment) {
+            Node<V> node = segment.get(uuid);
+            return node == null ? null : node.entity;
+        }
+    }
+
+    /**
+     * Caches an entity, which replaces the cached one, and marks it dirty.
+     *
+     * @param uuid   The UUID of the entity
+     * @param entity The entity
+     */
+    public void put(UUID uuid, V entity) {
+        Segment<V> segment = segmentOf(uuid);
+
+        synchronized (segment) {
+            segment.put(uuid, new Node<V>(uuid, entity, true));
+        }
+
+        writeBackEvicted(segment);
+    }
+
+    /**
+     * Marks a cached entity dirty after it was mutated in place.
+     *
+     * @param uuid The UUID of the entity
+     * @return Whether the entity is cached
+     */
+    public boolean modified(UUID uuid) {
+        Segment<V> segment = segmentOf(uuid);
+
+        synchronized (segment) {
+            Node<V> node = segment.get(uuid);
+
+            if (node == null) {
+                return false;
+            }
+
+            node.dirty = true;
+            node.accessed = System.nanoTime();
+            return true;
+        }
+    }
+
+    /**
+     * Evicts an entity and writes it back if it is dirty.
+     *
+     * @param uuid The UUID of the entity
+     */
+    public void invalidate(UUID uuid) {
+        Segment<V> segment = segmentOf(uuid);
+
+        synchronized (segment) {
+            Node<V> node = segment.remove(uuid);
+
+            if (node != null) {
+                segment.evicted(node);
+            }
+        }
+
+        writeBackEvicted(segment);
+    }
+
+    /**
+     * Caches a loaded or evicted entity, unless another thread cached it in the meantime.
+     *
+     * @return The cached entity
+     */
+    private V insert(Node<V> node) {
+        Segment<V> segment = segmentOf(node.uuid);
+        V entity;
+
+        synchronized (segment) {
+            Node<V> cached = segment.get(node.uuid);
+
+            if (cached == null) {
+                node.accessed = System.nanoTime();
+                segment.put(node.uuid, node);
+                cached = node;
+            }
+
+            entity = cached.entity;
+        }
+
+        writeBackEvicted(segment);
+        return entity;
+    }
+
+    /**
+     * Writes back every dirty entity.
+     */
+    public void flush() {
+        ArrayList<Node<V>> dirty = new ArrayList<Node<V>>();
+
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                for (Node<V> node : segment.values()) {
+                    if (node.dirty) {
+                        dirty.add(node);
+                    }
+                }
+            }
+        }
+
+        for (Node<V> node : dirty) {
+            writeBack(node);
+        }
+    }
+
+    /**
+     * Evicts every entity, which was not accessed for the expiry time, and writes it back if it is dirty.
+     */
+    public void evictExpired() {
+        if (expireAfterAccess <= 0) {
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                // The segment is in access order, so the expired entities come first
+                Iterator<Node<V>> it = segment.values().iterator();
+
+                while (it.hasNext()) {
+                    Node<V> node = it.next();
+
+                    if (now - node.accessed < expireAfterAccess) {
+                        break;
+                    }
+
+                    it.remove();
+                    segment.evicted(node);
+                }
+            }
+
+            writeBackEvicted(segment);
+        }
+    }
+
+    private void writeBackEvicted(Segment<V> segment) {
+        ArrayList<Node<V>> evicted;
+
+        synchronized (segment) {
+            if (segment.evicted.isEmpty()) {
+                return;
+            }
+
+            evicted = new ArrayList<Node<V>>(segment.evicted);
+            segment.evicted.clear();
+        }
+
+        for (Node<V> node : evicted) {
+            evictions.incrementAndGet();
+
+            if (node.dirty) {
+                evicting.put(node.uuid, node);
+                writeBack(node);
+            }
+        }
+    }
+
+    private void writeBack(final Node<V> node) {
+        Object[] values;
+
+        synchronized (segmentOf(node.uuid)) {
+            // Changes after capturing the values mark the entity dirty again
+            node.dirty = false;
+            values = adapter.write(node.uuid, node.entity);
+        }
+
+        writes.incrementAndGet();
+        publisher.publishBatch(new WriteBack(node.uuid, values), new DataCallback() {
+            @Override
+            public void committed(Data data) {
+                evicting.remove(node.uuid, node);
+            }
+
+            @Override
+            public void failed(Data data, DataException e) {
+                evicting.remove(node.uuid, node);
+            }
+        });
+    }
+
+    public int size() {
+        int size = 0;
+
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return The number of published write backs
+     */
+    public long getWrites() {
+        return writes.get();
+    }
+
+    /**
+     * Stops flushing and writes back every dirty entity. The write backs are committed once the publisher is stopped.
+     */
+    @Override
+    public boolean close() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+
+        flush();
+
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+
+        return true;
+    }
+
+    private Segment<V> segmentOf(UUID uuid) {
+        int h = uuid.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Represents a cached entity
+     */
+    private static final class Node<V> {
+        private final UUID uuid;
+        private final V entity;
+        private volatile boolean dirty;
+        private volatile long accessed = System.nanoTime();
+
+        private Node(UUID uuid, V entity, boolean dirty) {
+            this.uuid = uuid;
+            this.entity = entity;
+            this.dirty = dirty;
+        }
+    }
+
+    /**
+     * Represents the upsert of an entity, which replaces older upserts of the same entity in the batch
+     */
+    private final class WriteBack implements CoalescingData {
+        private final UUID uuid;
+        private final Object[] values;
+
+        private WriteBack(UUID uuid, Object[] values) {
+            this.uuid = uuid;
+            this.values = values;
+        }
+
+        @Override
+        public Object getCoalescingKey() {
+            return uuid;
+        }
+
+        @Override
+        public QueryProvider getQueryProvider() {
+            return provider;
+        }
+
+        @Override
+        public QueryKey getQueryKey() {
+            return storeKey;
+        }
+
+        @Override
+        public Object[] execute() {
+            return values;
+        }
+    }
+
+    /**
+     * A LRU map, which is only accessed while holding its own lock. Evicted entities are collected until they are
+     * written back outside of the lock.
+     */
+    private static final class Segment<V> extends LinkedHashMap<UUID, Node<V>> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+        private final ArrayList<Node<V>> evicted = new ArrayList<Node<V>>();
+
+        private Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        void evicted(Node<V> node) {
+            evicted.add(node);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Node<V>> eldest) {
+            if (size() > maxSize) {
+                evicted(eldest.getValue());
+                return true;
+            }
+
+            return false;
+        }
+    }
+}
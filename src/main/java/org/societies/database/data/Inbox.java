@@ -0,0 +1,17 @@
+package org.societies.database.data;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents a handoff of submissions from many producers to the single thread of a {@link DataWorker}.
+ * {@link #offer(Submission)} may be called by any thread, {@link #poll()} and {@link #isEmpty()} only by the worker.
+ */
+interface Inbox {
+
+    void offer(Submission submission);
+
+    @Nullable
+    Submission poll();
+
+    boolean isEmpty();
+}
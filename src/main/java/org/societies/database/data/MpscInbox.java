@@ -0,0 +1,52 @@
+package org.societies.database.data;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lock-free multi-producer/single-consumer inbox.
+ * <p>
+ * Producers swap themselves in as the new head and link the previous head to them,
+ * so offering is a single atomic swap and never waits for the consumer.
+ * The consumer follows the links from a stub, which is always the last polled submission.
+ */
+final class MpscInbox implements Inbox {
+
+    /** The last offered submission, swapped by producers */
+    private final AtomicReference<Submission> head;
+
+    /** The last polled submission, only touched by the consumer */
+    private Submission tail;
+
+    MpscInbox() {
+        Submission stub = new Submission(Submission.FLUSH, null, null);
+        this.head = new AtomicReference<Submission>(stub);
+        this.tail = stub;
+    }
+
+    @Override
+    public void offer(Submission submission) {
+        Submission previous = head.getAndSet(submission);
+        // Until this write the consumer sees the inbox as empty, the producer wakes it up afterwards
+        previous.next = submission;
+    }
+
+    @Nullable
+    @Override
+    public Submission poll() {
+        Submission next = tail.next;
+
+        if (next == null) {
+            return null;
+        }
+
+        tail = next;
+        return next;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tail.next == null;
+    }
+}
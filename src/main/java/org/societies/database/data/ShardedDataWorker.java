@@ -0,0 +1,142 @@
+package org.societies.database.data;
+
+import org.societies.database.DSLProvider;
+import org.societies.database.QueryKey;
+import org.societies.database.data.queue.Data;
+import org.societies.database.data.queue.DataCallback;
+import org.societies.database.data.queue.DataFuture;
+import org.societies.database.data.queue.PartitionedData;
+import org.societies.database.data.queue.Queue;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+/**
+ * Spreads published data over several {@link DataWorker}s, each one with its own {@link Queue} and thread.
+ * <p>
+ * Data is routed by its {@link QueryKey} or, for {@link PartitionedData}, by its partition key.
+ * So data of the same key is always executed by the same worker and keeps its order.
+ */
+@Singleton
+public final class ShardedDataWorker implements DataPublisher {
+
+    public static final String WORKER_SHARDS_KEY = "worker-shards";
+
+    private final DataWorker[] workers;
+    private final Thread[] threads;
+
+    @Inject
+    public ShardedDataWorker(Thread.UncaughtExceptionHandler exceptionHandler,
+                             DSLProvider dslProvider,
+                             Provider<Queue> queueProvider,
+                             @Named(WORKER_SHARDS_KEY) int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("At least one shard is required!");
+        }
+
+        this.workers = new DataWorker[shards];
+        this.threads = new Thread[shards];
+
+        for (int i = 0; i < shards; i++) {
+            workers[i] = new DataWorker(exceptionHandler, dslProvider, queueProvider.get());
+        }
+    }
+
+    /**
+     * Starts a thread for every shard, which is not running yet.
+     */
+    public synchronized void start() {
+        for (int i = 0; i < workers.length; i++) {
+            if (threads[i] != null) {
+                continue;
+            }
+
+            threads[i] = new Thread(workers[i], "DataWorker-" + i);
+            threads[i].start();
+        }
+    }
+
+    @Override
+    public void publishBatch(Data data) {
+        getShard(data).publishBatch(data);
+    }
+
+    @Override
+    public void publishSingle(Data data) {
+        getShard(data).publishSingle(data);
+    }
+
+    @Override
+    public void publishBatch(Data data, DataCallback callback) {
+        getShard(data).publishBatch(data, callback);
+    }
+
+    @Override
+    public void publishSingle(Data data, DataCallback callback) {
+        getShard(data).publishSingle(data, callback);
+    }
+
+    @Override
+    public DataFuture submitBatch(Data data) {
+        return getShard(data).submitBatch(data);
+    }
+
+    @Override
+    public DataFuture submitSingle(Data data) {
+        return getShard(data).submitSingle(data);
+    }
+
+    /**
+     * Drains every started shard and waits for their threads to finish.
+     * The shards are flushed first, so they drain in parallel.
+     *
+     * @throws InterruptedException If interrupted while waiting for a shard
+     */
+    @Override
+    public synchronized void stop() throws InterruptedException {
+        for (int i = 0; i < workers.length; i++) {
+            if (threads[i] != null) {
+                workers[i].flush();
+            }
+        }
+
+        for (int i = 0; i < workers.length; i++) {
+            if (threads[i] == null) {
+                continue;
+            }
+
+            workers[i].stop();
+            threads[i].join();
+            threads[i] = null;
+        }
+    }
+
+    public int getShards() {
+        return workers.length;
+    }
+
+    DataWorker getShard(Data data) {
+        Object key = data instanceof PartitionedData ? ((PartitionedData) data).getPartitionKey() : data.getQueryKey();
+        return workers[shardOf(key, workers.length)];
+    }
+
+    static int shardOf(Object key, int shards) {
+        if (key == null) {
+            return 0;
+        }
+
+        int hash = key.hashCode();
+        // Spread the higher bits, identity hash codes often differ only there
+        hash ^= (hash >>> 16);
+        return (hash & Integer.MAX_VALUE) % shards;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardedDataWorker{" +
+                "shards=" + workers.length +
+                '}';
+    }
+}
@@ -0,0 +1,31 @@
+package org.societies.database.data;
+
+import org.societies.database.data.queue.Data;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Represents a Submission of a producer to a {@link DataWorker}.
+ * The submission is its own node in the {@link MpscInbox}, so handing it over needs no further allocation.
+ */
+final class Submission {
+
+    public static final int BATCH = 0;
+    public static final int SINGLE = 1;
+    public static final int FLUSH = 2;
+
+    final int type;
+    final Data data;
+
+    /** Counted down once the worker is idle after a flush, may be null */
+    final CountDownLatch done;
+
+    /** The next submission in the inbox, written by producers */
+    volatile Submission next;
+
+    Submission(int type, Data data, CountDownLatch done) {
+        this.type = type;
+        this.data = data;
+        this.done = done;
+    }
+}
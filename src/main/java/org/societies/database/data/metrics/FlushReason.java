@@ -0,0 +1,23 @@
+package org.societies.database.data.metrics;
+
+/**
+ * Represents the reason a batch was flushed
+ */
+public enum FlushReason {
+    /**
+     * The batch reached the critical batch size
+     */
+    SIZE,
+    /**
+     * The batch reached its deadline
+     */
+    IDLE,
+    /**
+     * The auto flush interval passed
+     */
+    AUTO_FLUSH,
+    /**
+     * The queue was flushed explicitly, when flushing or stopping the worker
+     */
+    STOP
+}
@@ -0,0 +1,273 @@
+package org.societies.database.data.metrics;
+
+import org.jetbrains.annotations.Nullable;
+import org.societies.database.QueryKey;
+import org.societies.database.data.queue.Lane;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents QueueMetrics, which are exposed as a MXBean.
+ * Recording only touches counters and histograms, which never allocate once a key was seen.
+ */
+public final class JmxMetrics implements QueueMetrics, JmxMetricsMXBean {
+
+    private final ConcurrentHashMap<QueryKey<?>, AtomicLong> pending = new ConcurrentHashMap<QueryKey<?>, AtomicLong>();
+    private final EnumMap<FlushReason, AtomicLong> flushes = new EnumMap<FlushReason, AtomicLong>(FlushReason.class);
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong replaced = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong quarantined = new AtomicLong();
+
+    private final Histogram batchSizes = new Histogram();
+    private final Histogram executeLatencies = new Histogram();
+    private final Histogram commitLatencies = new Histogram();
+    private final EnumMap<Lane, Histogram> laneLatencies = new EnumMap<Lane, Histogram>(Lane.class);
+
+    public JmxMetrics() {
+        for (FlushReason reason : FlushReason.values()) {
+            flushes.put(reason, new AtomicLong());
+        }
+
+        for (Lane lane : Lane.values()) {
+            laneLatencies.put(lane, new Histogram());
+        }
+    }
+
+    /**
+     * Registers these metrics at the platform MBean server.
+     *
+     * @param name The name of the worker, which is part of the object name
+     * @return The object name
+     * @throws JMException If the registration failed
+     */
+    public ObjectName register(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("org.societies.database:type=DataWorker,name=" + ObjectName.quote(name));
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public void published(QueryKey<?> key) {
+        pendingOf(key).incrementAndGet();
+    }
+
+    @Override
+    public void replaced(QueryKey<?> key) {
+        pendingOf(key).decrementAndGet();
+        replaced.incrementAndGet();
+    }
+
+    @Override
+    public void dropped(QueryKey<?> key) {
+        pendingOf(key).decrementAndGet();
+        dropped.incrementAndGet();
+    }
+
+    @Override
+    public void flushed(QueryKey<?> key, FlushReason reason) {
+        flushes.get(reason).incrementAndGet();
+    }
+
+    @Override
+    public void executed(QueryKey<?> key, int rows, long nanos) {
+        batchSizes.record(rows);
+        executeLatencies.record(nanos);
+    }
+
+    @Override
+    public void committed(QueryKey<?> key, int rows, long latency) {
+        pendingOf(key).addAndGet(-rows);
+        commitLatencies.record(latency);
+    }
+
+    @Override
+    public void committed(Lane lane, int rows, long latency) {
+        laneLatencies.get(lane).record(latency);
+    }
+
+    @Override
+    public void failed(@Nullable QueryKey<?> key) {
+        errors.incrementAndGet();
+    }
+
+    @Override
+    public void quarantined(QueryKey<?> key) {
+        pendingOf(key).decrementAndGet();
+        quarantined.incrementAndGet();
+    }
+
+    private AtomicLong pendingOf(QueryKey<?> key) {
+        AtomicLong count = pending.get(key);
+
+        if (count == null) {
+            AtomicLong created = new AtomicLong();
+            count = pending.putIfAbsent(key, created);
+
+            if (count == null) {
+                count = created;
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public long getPending() {
+        long total = 0;
+
+        for (AtomicLong count : pending.values()) {
+            total += count.get();
+        }
+
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getPendingByKey() {
+        HashMap<String, Long> result = new HashMap<String, Long>();
+
+        for (Map.Entry<QueryKey<?>, AtomicLong> entry : pending.entrySet()) {
+            result.put(entry.getKey().toString(), entry.getValue().get());
+        }
+
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getFlushes() {
+        HashMap<String, Long> result = new HashMap<String, Long>();
+
+        for (Map.Entry<FlushReason, AtomicLong> entry : flushes.entrySet()) {
+            result.put(entry.getKey().name(), entry.getValue().get());
+        }
+
+        return result;
+    }
+
+    @Override
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public long getReplaced() {
+        return replaced.get();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public long getQuarantined() {
+        return quarantined.get();
+    }
+
+    @Override
+    public long getBatches() {
+        return batchSizes.getCount();
+    }
+
+    @Override
+    public double getBatchSizeMean() {
+        return batchSizes.getMean();
+    }
+
+    @Override
+    public long getBatchSize99thPercentile() {
+        return batchSizes.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getBatchSizeMax() {
+        return batchSizes.getMax();
+    }
+
+    @Override
+    public double getExecuteLatencyMean() {
+        return executeLatencies.getMean();
+    }
+
+    @Override
+    public long getExecuteLatency50thPercentile() {
+        return executeLatencies.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getExecuteLatency99thPercentile() {
+        return executeLatencies.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getExecuteLatencyMax() {
+        return executeLatencies.getMax();
+    }
+
+    @Override
+    public long getCommitLatency50thPercentile() {
+        return commitLatencies.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getCommitLatency99thPercentile() {
+        return commitLatencies.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getCommitLatency999thPercentile() {
+        return commitLatencies.getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getCommitLatencyMax() {
+        return commitLatencies.getMax();
+    }
+
+    @Override
+    public Map<String, Long> getCommitLatency50thPercentileByLane() {
+        return percentileByLane(50);
+    }
+
+    @Override
+    public Map<String, Long> getCommitLatency99thPercentileByLane() {
+        return percentileByLane(99);
+    }
+
+    private Map<String, Long> percentileByLane(double percentile) {
+        HashMap<String, Long> result = new HashMap<String, Long>();
+
+        for (Map.Entry<Lane, Histogram> entry : laneLatencies.entrySet()) {
+            result.put(entry.getKey().name(), entry.getValue().getValueAtPercentile(percentile));
+        }
+
+        return result;
+    }
+
+    public Histogram getBatchSizes() {
+        return batchSizes;
+    }
+
+    public Histogram getExecuteLatencies() {
+        return executeLatencies;
+    }
+
+    public Histogram getCommitLatencies() {
+        return commitLatencies;
+    }
+
+    public Histogram getCommitLatencies(Lane lane) {
+        return laneLatencies.get(lane);
+    }
+}
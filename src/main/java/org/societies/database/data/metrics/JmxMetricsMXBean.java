@@ -0,0 +1,51 @@
+package org.societies.database.data.metrics;
+
+import java.util.Map;
+
+/**
+ * Represents the management interface of {@link JmxMetrics}, latencies are reported in nanoseconds
+ */
+public interface JmxMetricsMXBean {
+
+    long getPending();
+
+    Map<String, Long> getPendingByKey();
+
+    Map<String, Long> getFlushes();
+
+    long getDropped();
+
+    long getReplaced();
+
+    long getErrors();
+
+    long getQuarantined();
+
+    long getBatches();
+
+    double getBatchSizeMean();
+
+    long getBatchSize99thPercentile();
+
+    long getBatchSizeMax();
+
+    double getExecuteLatencyMean();
+
+    long getExecuteLatency50thPercentile();
+
+    long getExecuteLatency99thPercentile();
+
+    long getExecuteLatencyMax();
+
+    long getCommitLatency50thPercentile();
+
+    long getCommitLatency99thPercentile();
+
+    long getCommitLatency999thPercentile();
+
+    long getCommitLatencyMax();
+
+    Map<String, Long> getCommitLatency50thPercentileByLane();
+
+    Map<String, Long> getCommitLatency99thPercentileByLane();
+}
@@ -0,0 +1,122 @@
+package org.societies.database.data.metrics;
+
+import org.jetbrains.annotations.Nullable;
+import org.societies.database.QueryKey;
+import org.societies.database.data.queue.Lane;
+
+/**
+ * Represents the metrics of a queue. Every method is called on the worker thread and has to be cheap.
+ */
+public interface QueueMetrics {
+
+    /**
+     * Records nothing
+     */
+    QueueMetrics NONE = new QueueMetrics() {
+        @Override
+        public void published(QueryKey<?> key) {
+        }
+
+        @Override
+        public void replaced(QueryKey<?> key) {
+        }
+
+        @Override
+        public void dropped(QueryKey<?> key) {
+        }
+
+        @Override
+        public void flushed(QueryKey<?> key, FlushReason reason) {
+        }
+
+        @Override
+        public void executed(QueryKey<?> key, int rows, long nanos) {
+        }
+
+        @Override
+        public void committed(QueryKey<?> key, int rows, long latency) {
+        }
+
+        @Override
+        public void committed(Lane lane, int rows, long latency) {
+        }
+
+        @Override
+        public void failed(@Nullable QueryKey<?> key) {
+        }
+
+        @Override
+        public void quarantined(QueryKey<?> key) {
+        }
+    };
+
+    /**
+     * Data was queued.
+     *
+     * @param key The key of the data
+     */
+    void published(QueryKey<?> key);
+
+    /**
+     * Queued data was replaced by newer data of the same coalescing key.
+     *
+     * @param key The key of the data
+     */
+    void replaced(QueryKey<?> key);
+
+    /**
+     * Queued data was dropped, because the queue was full.
+     *
+     * @param key The key of the data
+     */
+    void dropped(QueryKey<?> key);
+
+    /**
+     * A batch was flushed.
+     *
+     * @param key    The key of the batch
+     * @param reason The reason of the flush
+     */
+    void flushed(QueryKey<?> key, FlushReason reason);
+
+    /**
+     * An entry was executed.
+     *
+     * @param key   The key of the entry
+     * @param rows  The number of executed rows
+     * @param nanos The execution time in nanoseconds
+     */
+    void executed(QueryKey<?> key, int rows, long nanos);
+
+    /**
+     * An entry was committed.
+     *
+     * @param key     The key of the entry
+     * @param rows    The number of committed rows
+     * @param latency The time from queueing the oldest row until the commit in nanoseconds
+     */
+    void committed(QueryKey<?> key, int rows, long latency);
+
+    /**
+     * An entry of a lane was committed, this is recorded in addition to the commit of its key.
+     *
+     * @param lane    The lane of the entry
+     * @param rows    The number of committed rows
+     * @param latency The time from queueing the oldest row until the commit in nanoseconds
+     */
+    void committed(Lane lane, int rows, long latency);
+
+    /**
+     * An execution or a transaction failed.
+     *
+     * @param key The key of the failed entry or null if the commit of a transaction failed
+     */
+    void failed(@Nullable QueryKey<?> key);
+
+    /**
+     * Queued data failed too often and was quarantined.
+     *
+     * @param key The key of the data
+     */
+    void quarantined(QueryKey<?> key);
+}
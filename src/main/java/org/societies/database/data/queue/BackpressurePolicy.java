@@ -0,0 +1,29 @@
+package org.societies.database.data.queue;
+
+/**
+ * Represents what happens if data is published to a full {@link Queue}
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * Blocks the producer until there is space or the timeout elapses, then fails with a {@link DataException}
+     */
+    BLOCK,
+
+    /**
+     * Fails immediately with a {@link DataException}
+     */
+    FAIL,
+
+    /**
+     * Accepts the data and drops the oldest buffered batch data instead.
+     * Only batch data, which is not executing, is dropped. Single data is never dropped, so once no batch data is
+     * left the queue may exceed its limits.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Drops data below the shed priority, see {@link PrioritizedData}, and blocks for the rest
+     */
+    SHED_BY_PRIORITY
+}
@@ -0,0 +1,53 @@
+package org.societies.database.data.queue;
+
+/**
+ * Represents an AIMD controller of the size and idle time of a single batch.
+ * <p>
+ * A batch, which executed faster than the target latency while it was full, grows by one row. A batch, which
+ * executed slower, is halved. The idle time shrinks together with the size, so small batches do not wait for the
+ * whole idle time of the configured critical size.
+ */
+final class BatchController {
+
+    private final DefaultQueue.BatchSettings settings;
+
+    /** The effective critical size of the batch */
+    private int limit;
+
+    BatchController(DefaultQueue.BatchSettings settings) {
+        this.settings = settings;
+        this.limit = settings.getCriticalBatchSize();
+    }
+
+    /**
+     * Adapts the limits to an execution.
+     *
+     * @param rows  The number of executed rows
+     * @param nanos The execution time in nanoseconds
+     */
+    void executed(int rows, long nanos) {
+        if (!settings.isAdaptive()) {
+            return;
+        }
+
+        if (nanos > settings.getTargetLatency()) {
+            limit = Math.max(settings.getMinBatchSize(), limit >> 1);
+        } else if (rows >= limit) {
+            limit = Math.min(settings.getCriticalBatchSize(), limit + 1);
+        }
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    long getMaxIdle() {
+        int max = settings.getCriticalBatchSize();
+
+        if (limit >= max) {
+            return settings.getMaxIdle();
+        }
+
+        return Math.max(settings.getMinIdle(), settings.getMaxIdle() * limit / max);
+    }
+}
@@ -1,77 +1,481 @@
 package org.societies.database.data.queue;
 
-import org.jooq.BatchBindStep;
 import org.jooq.DSLContext;
-import org.jooq.Query;
+import org.societies.database.BindBuffer;
+import org.societies.database.CachedQuery;
 import org.societies.database.QueryKey;
 import org.societies.database.QueryProvider;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 
 /**
  * Represents a BatchEntry
  */
 final class BatchEntry implements Entry {
 
-    private final LinkedList<Data> queue = new LinkedList<Data>();
-    private final long created;
-    private final DefaultQueue.BatchSettings settings;
+    private final RingBuffer<Data> queue = new RingBuffer<Data>();
+    private final ArrayList<Data> inFlight = new ArrayList<Data>();
+    private final ArrayList<Object[]> rows = new ArrayList<Object[]>();
+    private final HashMap<Object, Coalesced> coalesced = new HashMap<Object, Coalesced>();
+    private final BatchController controller;
 
     private final QueryKey key;
     private final QueryProvider provider;
+    private final DataListener listener;
+    private final BatchStrategy strategy;
 
-    public BatchEntry(DefaultQueue.BatchSettings settings, QueryKey key, QueryProvider provider) {
-        this.settings = settings;
+    /** Whether the bind buffer stores primitives off-heap */
+    private final boolean directBuffer;
+    /** The bind buffer, which is reused for every execution, created once the first batch is bound */
+    private BindBuffer buffer;
+
+    /** The execution of oversized batches in parallel chunks or null if this batch is executed serially */
+    ChunkedExecution chunks;
+
+    /** The time at which this entry has to be flushed, set when the first data arrives */
+    private long deadline;
+
+    /** The nano time at which the first data arrived */
+    private long enqueued;
+
+    /** The index in the {@link DeadlineHeap}, -1 if not scheduled */
+    int heapIndex = -1;
+
+    /** Whether this entry waits for execution */
+    boolean flushed;
+
+    /** The number of journaled records per segment, which are released once this batch is committed */
+    private int[] journaled;
+
+    /** The number of rows of chunks, which were committed while other chunks of this batch failed */
+    private int committedChunks;
+
+    public BatchEntry(DefaultQueue.BatchSettings settings, QueryKey key, QueryProvider provider,
+                      DataListener listener, BatchStrategy strategy, boolean directBuffer) {
+        this.controller = new BatchController(settings);
         this.key = key;
         this.provider = provider;
-        this.created = System.currentTimeMillis();
+        this.listener = listener;
+        this.strategy = strategy;
+        this.directBuffer = directBuffer;
     }
 
+    @Override
     public QueryKey getQueryKey() {
         return key;
     }
 
-    public Query getQuery() {
-        return provider.getQuery(key);
+    public CachedQuery getQuery() {
+        return provider.getCachedQuery(key);
     }
 
-    public void offer(Data data) {
+    /**
+     * Offers data to this batch.
+     * {@link CoalescingData} replaces queued data of the same coalescing key instead.
+     *
+     * @param data The data
+     * @param now  The current time in milliseconds
+     * @return Whether this batch was empty before and got a new deadline
+     */
+    public boolean offer(Data data, long now) {
+        Object coalescingKey = data instanceof CoalescingData ? ((CoalescingData) data).getCoalescingKey() : null;
+
+        if (coalescingKey != null) {
+            Coalesced queued = coalesced.get(coalescingKey);
+
+            if (queued != null) {
+                Data replaced = queued.data;
+
+                if (replaced instanceof TrackedData && !(data instanceof TrackedData)) {
+                    // The replaced data completes with the outcome of its replacement
+                    data = new TrackedData(data, DataCallback.NONE);
+                }
+
+                queued.data = data;
+                listener.replaced(replaced, data);
+                return false;
+            }
+        }
+
+        boolean first = queue.isEmpty();
+
+        if (first) {
+            deadline = now + controller.getMaxIdle();
+            enqueued = System.nanoTime();
+        }
+
+        if (coalescingKey != null) {
+            Coalesced queued = new Coalesced(coalescingKey, data);
+            coalesced.put(coalescingKey, queued);
+            data = queued;
+        }
+
         queue.offer(data);
+        return first;
+    }
+
+    /**
+     * Remembers the journal segment of offered data.
+     *
+     * @param segment  The segment or -1 if the data was not journaled
+     * @param segments The number of segments of the journal
+     */
+    void journaled(int segment, int segments) {
+        if (segment < 0) {
+            return;
+        }
+
+        if (journaled == null) {
+            journaled = new int[segments];
+        }
+
+        journaled[segment]++;
+    }
+
+    /**
+     * Releases the journal records of the committed batch.
+     *
+     * @param journal The journal
+     */
+    void releaseJournal(Journal journal) {
+        if (journaled == null) {
+            return;
+        }
+
+        for (int i = 0; i < journaled.length; i++) {
+            if (journaled[i] > 0) {
+                journal.release(i, journaled[i]);
+                journaled[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * Journals the queued data again after some chunks of this batch were committed, so the records of the committed
+     * chunks are released and not replayed after a crash.
+     *
+     * @param journal The journal
+     */
+    void rejournal(Journal journal) {
+        releaseJournal(journal);
+
+        for (int i = 0; i < queue.size(); i++) {
+            Data data = queue.get(i);
+
+            if (data instanceof Coalesced) {
+                data = ((Coalesced) data).data;
+            }
+
+            journaled(journal.append(data, false), journal.getSegments());
+        }
+    }
+
+    /**
+     * @return The number of rows of chunks, which were committed since the last call, while other chunks failed
+     */
+    int takeCommittedChunks() {
+        int rows = committedChunks;
+        committedChunks = 0;
+        return rows;
     }
 
     public Data poll() {
-        return queue.poll();
+        Data data = queue.poll();
+        return data == null ? null : unwrap(data);
+    }
+
+    private Data unwrap(Data data) {
+        if (data instanceof Coalesced) {
+            Coalesced queued = (Coalesced) data;
+            coalesced.remove(queued.key);
+            return queued.data;
+        }
+
+        return data;
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return queue.size() + inFlight.size();
+    }
+
+    @Override
+    public long getEnqueued() {
+        return enqueued;
+    }
+
+    public long getDeadline() {
+        return deadline;
     }
 
     @Override
     public void execute(DSLContext context) throws DataException {
-        BatchBindStep batch = context.batch(getQuery());
+        if (chunks != null && queue.size() > chunks.getChunkSize()) {
+            executeChunked(context);
+            return;
+        }
+
+        prepare(context);
+        commit();
+    }
+
+    /**
+     * Executes an oversized batch in parallel chunks. Committed chunks are released, only failed chunks are requeued.
+     */
+    private void executeChunked(DSLContext context) throws DataException {
+        queue.drainTo(inFlight);
+
+        RuntimeException[] failures;
+
+        try {
+            for (int i = 0; i < inFlight.size(); i++) {
+                Data data = unwrap(inFlight.get(i));
+                inFlight.set(i, data);
+                rows.add(data.execute());
+            }
+
+            long start = System.nanoTime();
+            failures = chunks.execute(context, getQuery(), strategy, rows);
+            controller.executed(rows.size(), System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            rollback();
+            throw e instanceof DataException ? (DataException) e : new DataException(e);
+        } finally {
+            rows.clear();
+        }
+
+        int size = chunks.getChunkSize();
+        RuntimeException failure = null;
+
+        int committed = 0;
+
+        for (int i = 0; i < failures.length; i++) {
+            if (failures[i] == null) {
+                List<Data> chunk = inFlight.subList(i * size, Math.min(inFlight.size(), (i + 1) * size));
+                committed += chunk.size();
+                listener.committed(chunk);
+            } else if (failure == null) {
+                failure = failures[i];
+            }
+        }
 
-        Data data;
-        while ((data = poll()) != null) {
-            Object[] execute;
+        // Requeue the failed chunks from the last one, so they keep their order
+        for (int i = failures.length - 1; i >= 0; i--) {
+            if (failures[i] != null) {
+                requeue(inFlight.subList(i * size, Math.min(inFlight.size(), (i + 1) * size)));
+            }
+        }
+
+        inFlight.clear();
+
+        if (failure != null) {
+            committedChunks += committed;
+            throw failure instanceof DataException ? (DataException) failure : new DataException(failure);
+        }
+    }
+
+    @Override
+    public void prepare(DSLContext context) throws DataException {
+        if (queue.isEmpty()) {
+            return;
+        }
+
+        try {
+            queue.drainTo(inFlight);
+
+            for (int i = 0; i < inFlight.size(); i++) {
+                inFlight.set(i, unwrap(inFlight.get(i)));
+            }
+
+            CachedQuery query = getQuery();
+            long start;
+
+            if (strategy instanceof BufferedBatchStrategy && query.isBindable()) {
+                BindBuffer buffer = getBuffer(query);
+
+                for (int i = 0; i < inFlight.size(); i++) {
+                    bind(buffer, inFlight.get(i));
+                }
+
+                start = System.nanoTime();
+                ((BufferedBatchStrategy) strategy).execute(context, query, buffer);
+            } else {
+                for (int i = 0; i < inFlight.size(); i++) {
+                    rows.add(inFlight.get(i).execute());
+                }
+
+                start = System.nanoTime();
+                strategy.execute(context, query, rows);
+            }
+
+            controller.executed(inFlight.size(), System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            rollback();
+            throw e instanceof DataException ? (DataException) e : new DataException(e);
+        } finally {
+            rows.clear();
+
+            if (buffer != null) {
+                buffer.clear();
+            }
+        }
+    }
+
+    private BindBuffer getBuffer(CachedQuery query) {
+        if (buffer == null || buffer.getColumns() != query.getParameterCount()) {
+            buffer = new BindBuffer(query.getParameterCount(), Math.max(1, controller.getLimit()), directBuffer);
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Writes the values of data into the buffer, rows of objects are adapted.
+     * Tracked data is bound like the data it wraps.
+     */
+    private static void bind(BindBuffer buffer, Data data) {
+        if (data instanceof TrackedData) {
+            data = ((TrackedData) data).getData();
+        }
+
+        if (data instanceof BoundData) {
+            buffer.nextRow();
+            ((BoundData) data).bind(buffer);
+        } else {
+            buffer.addRow(data.execute());
+        }
+    }
+
+    @Override
+    public void commit() {
+        if (inFlight.isEmpty()) {
+            return;
+        }
 
-            try {
-                execute = data.execute();
-            } catch (RuntimeException e) {
-                offer(data);
-                throw new DataException(e);
+        listener.committed(inFlight);
+        inFlight.clear();
+    }
+
+    @Override
+    public void isolate(DSLContext context) {
+        ArrayList<Data> batch = new ArrayList<Data>(queue.size());
+        queue.drainTo(batch);
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.set(i, unwrap(batch.get(i)));
+        }
+
+        isolate(context, batch);
+    }
+
+    /**
+     * Bisects the batch until the failing data is found.
+     */
+    private void isolate(DSLContext context, List<Data> batch) {
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                rows.add(batch.get(i).execute());
+            }
+
+            strategy.execute(context, getQuery(), rows);
+        } catch (RuntimeException e) {
+            rows.clear();
+
+            if (batch.size() == 1) {
+                DataException cause = e instanceof DataException ? (DataException) e : new DataException(e);
+                listener.quarantined(batch.get(0), false, cause);
+                return;
             }
 
-            batch.bind(execute);
+            int half = batch.size() >>> 1;
+            isolate(context, batch.subList(0, half));
+            isolate(context, batch.subList(half, batch.size()));
+            return;
         }
 
-        batch.execute();
+        rows.clear();
+        listener.committed(batch);
+    }
+
+    @Override
+    public void rollback() {
+        // Put the whole batch back in its original order
+        requeue(inFlight);
+        inFlight.clear();
     }
 
-    private boolean reachedDeadLine() {
-        long maxIdle = settings.getMaxIdle();
-        return (System.currentTimeMillis() - maxIdle) > created;
+    /**
+     * Puts data back in front of the queue in its original order.
+     * Coalescing data is registered again, so later data of its coalescing key still replaces it.
+     */
+    private void requeue(List<Data> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            Data data = batch.get(i);
+            Object coalescingKey = data instanceof CoalescingData ? ((CoalescingData) data).getCoalescingKey() : null;
+
+            // Data, which was queued meanwhile, keeps its own position after the requeued data
+            if (coalescingKey != null && !coalesced.containsKey(coalescingKey)) {
+                Coalesced queued = new Coalesced(coalescingKey, data);
+                coalesced.put(coalescingKey, queued);
+                batch.set(i, queued);
+            }
+        }
+
+        queue.addAllFirst(batch);
+    }
+
+    public boolean reachedDeadLine(long now) {
+        return !queue.isEmpty() && now >= deadline;
+    }
+
+    /**
+     * @return The effective critical size of this batch
+     */
+    public int getCriticalSize() {
+        return controller.getLimit();
+    }
+
+    public boolean reachedCriticalSize() {
+        return queue.size() >= controller.getLimit();
     }
 
     @Override
     public boolean isReady() {
-        int criticalBatchSize = settings.getCriticalBatchSize();
-        return queue.size() >= criticalBatchSize || reachedDeadLine();
+        return reachedCriticalSize() || reachedDeadLine(System.currentTimeMillis());
+    }
+
+    /**
+     * Holds the latest data of a coalescing key at the position of the first one
+     */
+    private static final class Coalesced implements Data {
+
+        private final Object key;
+        private Data data;
+
+        private Coalesced(Object key, Data data) {
+            this.key = key;
+            this.data = data;
+        }
+
+        @Override
+        public QueryProvider getQueryProvider() {
+            return data.getQueryProvider();
+        }
+
+        @Override
+        public QueryKey getQueryKey() {
+            return data.getQueryKey();
+        }
+
+        @Override
+        public Object[] execute() {
+            return data.execute();
+        }
     }
 }
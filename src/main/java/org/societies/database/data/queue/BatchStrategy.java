@@ -0,0 +1,22 @@
+package org.societies.database.data.queue;
+
+import org.jooq.DSLContext;
+import org.societies.database.CachedQuery;
+
+import java.util.List;
+
+/**
+ * Represents a way to execute the rows of a batch
+ */
+public interface BatchStrategy {
+
+    /**
+     * Executes a query once for every row.
+     *
+     * @param context The context
+     * @param query   The query
+     * @param rows    The rows
+     * @throws org.jooq.exception.DataAccessException If the execution failed
+     */
+    void execute(DSLContext context, CachedQuery query, List<Object[]> rows);
+}
@@ -0,0 +1,21 @@
+package org.societies.database.data.queue;
+
+import org.societies.database.BindSink;
+
+/**
+ * Represents a Data, which writes its values directly into the bind buffer of its batch.
+ * <p>
+ * Batches bind these values without a row of objects and without boxing primitives.
+ * A {@link Journal} writes these values straight into its segments as well.
+ * {@link #execute()} must still return the same values, it is used for isolating failures and
+ * queries whose bind parameters are unknown.
+ */
+public interface BoundData extends Data {
+
+    /**
+     * Writes the values in the order of the bind parameters.
+     *
+     * @param sink The sink
+     */
+    void bind(BindSink sink);
+}
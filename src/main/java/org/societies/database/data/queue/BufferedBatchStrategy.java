@@ -0,0 +1,21 @@
+package org.societies.database.data.queue;
+
+import org.jooq.DSLContext;
+import org.societies.database.BindBuffer;
+import org.societies.database.CachedQuery;
+
+/**
+ * Represents a BatchStrategy, which also executes rows held in a {@link BindBuffer}
+ */
+public interface BufferedBatchStrategy extends BatchStrategy {
+
+    /**
+     * Executes a query once for every row of a buffer.
+     *
+     * @param context The context
+     * @param query   The query, whose bind parameters are known
+     * @param buffer  The buffer of rows
+     * @throws org.jooq.exception.DataAccessException If the execution failed
+     */
+    void execute(DSLContext context, CachedQuery query, BindBuffer buffer);
+}
@@ -0,0 +1,324 @@
+package org.societies.database.data.queue;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import org.societies.database.QueryKey;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Represents the Capacity of a {@link Queue}.
+ * <p>
+ * Limits the queued data by entry count and by estimated size, both per {@link QueryKey} and in total.
+ * A limit of zero or less means unbounded. Producers reserve space by {@link #acquire(Data)}, which applies the
+ * {@link BackpressurePolicy} if a limit is reached. The space is released again once the data was committed or
+ * dropped. Reserving space never takes a lock unless the producer has to block, every counter is reserved by a
+ * compare-and-set only if the space fits, so concurrent producers never exceed a limit.
+ */
+public final class Capacity implements DataListener {
+
+    /** The size of data which does not implement {@link SizedData} */
+    public static final int DEFAULT_DATA_SIZE = 64;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final int maxEntriesPerKey;
+    private final long maxBytesPerKey;
+
+    private final BackpressurePolicy policy;
+    private final long blockTimeout;
+    private final int shedPriority;
+
+    private final Occupancy total = new Occupancy();
+    private final ConcurrentHashMap<QueryKey, Occupancy> occupancies = new ConcurrentHashMap<QueryKey, Occupancy>();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    @Inject
+    public Capacity(@Named("queue-max-entries") int maxEntries,
+                    @Named("queue-max-bytes") long maxBytes,
+                    @Named("queue-max-entries-per-key") int maxEntriesPerKey,
+                    @Named("queue-max-bytes-per-key") long maxBytesPerKey,
+                    @Named("queue-backpressure-policy") BackpressurePolicy policy,
+                    @Named("queue-block-timeout") long blockTimeout,
+                    @Named("queue-time-unit") TimeUnit unit,
+                    @Named("queue-shed-priority") int shedPriority) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.maxEntriesPerKey = maxEntriesPerKey;
+        this.maxBytesPerKey = maxBytesPerKey;
+        this.policy = policy;
+        this.blockTimeout = unit.toNanos(blockTimeout);
+        this.shedPriority = shedPriority;
+    }
+
+    public static Capacity unbounded() {
+        return new Capacity(0, 0, 0, 0, BackpressurePolicy.BLOCK, 0, TimeUnit.MILLISECONDS, 0);
+    }
+
+    /**
+     * Reserves space for data, which is about to be published.
+     *
+     * @param data The data
+     * @return Whether the data may be published, false if it was shed
+     * @throws DataException If the queue is full and the policy fails or the producer blocked too long
+     */
+    public boolean acquire(Data data) throws DataException {
+        Occupancy occupancy = getOccupancy(data.getQueryKey());
+        int size = sizeOf(data);
+
+        if (tryReserve(occupancy, size)) {
+            return true;
+        }
+
+        switch (policy) {
+            case DROP_OLDEST:
+                // The queue drops the oldest data once it receives this one
+                reserve(data);
+                return true;
+            case FAIL:
+                throw new DataException("The queue is full, rejected data of " + data.getQueryKey() + "!");
+            case SHED_BY_PRIORITY:
+                if (priorityOf(data) < shedPriority) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+
+                // Important data blocks
+                block(occupancy, size, data);
+                return true;
+            default:
+                block(occupancy, size, data);
+                return true;
+        }
+    }
+
+    /**
+     * Reserves space for data regardless of the limits, for example for recovered data.
+     *
+     * @param data The data
+     */
+    void reserve(Data data) {
+        int size = sizeOf(data);
+
+        getOccupancy(data.getQueryKey()).add(1, size);
+        total.add(1, size);
+    }
+
+    private void block(Occupancy occupancy, int size, Data data) throws DataException {
+        long nanos = blockTimeout;
+
+        try {
+            lock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataException(e, "Interrupted while waiting for space in the queue!");
+        }
+
+        waiting.incrementAndGet();
+
+        try {
+            while (!tryReserve(occupancy, size)) {
+                if (nanos <= 0) {
+                    throw new DataException("The queue is full, timed out publishing data of " + data.getQueryKey() + "!");
+                }
+
+                nanos = released.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataException(e, "Interrupted while waiting for space in the queue!");
+        } finally {
+            waiting.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    private boolean tryReserve(Occupancy occupancy, int size) {
+        if (!occupancy.tryAdd(size, maxEntriesPerKey, maxBytesPerKey)) {
+            return false;
+        }
+
+        if (!total.tryAdd(size, maxEntries, maxBytes)) {
+            occupancy.add(-1, -size);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Releases the space of data, which left the queue.
+     *
+     * @param data The data
+     */
+    public void release(Data data) {
+        int size = sizeOf(data);
+
+        getOccupancy(data.getQueryKey()).add(-1, -size);
+        total.add(-1, -size);
+
+        if (waiting.get() > 0) {
+            lock.lock();
+            try {
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void committed(List<Data> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            release(batch.get(i));
+        }
+    }
+
+    @Override
+    public void dropped(Data data) {
+        dropped.incrementAndGet();
+        release(data);
+    }
+
+    @Override
+    public void replaced(Data data, Data replacement) {
+        release(data);
+    }
+
+    @Override
+    public void quarantined(Data data, boolean single, DataException cause) {
+        release(data);
+    }
+
+    public boolean isExceeded() {
+        return exceeds(total.entries.get(), maxEntries) || exceeds(total.bytes.get(), maxBytes);
+    }
+
+    /**
+     * @param key The key
+     * @return Whether the limits of the key are exceeded, ignoring the global limits
+     */
+    public boolean isExceeded(QueryKey key) {
+        Occupancy occupancy = occupancies.get(key);
+        return occupancy != null && isKeyExceeded(occupancy);
+    }
+
+    private boolean isKeyExceeded(Occupancy occupancy) {
+        return exceeds(occupancy.entries.get(), maxEntriesPerKey) || exceeds(occupancy.bytes.get(), maxBytesPerKey);
+    }
+
+    private static boolean exceeds(long value, long max) {
+        return max > 0 && value > max;
+    }
+
+    /**
+     * @return The fill level of the most occupied global limit, from 0 to 1 or 0 if unbounded
+     */
+    public float getUtilization() {
+        float entries = maxEntries > 0 ? (float) total.entries.get() / maxEntries : 0;
+        float bytes = maxBytes > 0 ? (float) total.bytes.get() / maxBytes : 0;
+        return Math.max(entries, bytes);
+    }
+
+    public int getEntries() {
+        return total.entries.get();
+    }
+
+    public long getBytes() {
+        return total.bytes.get();
+    }
+
+    public int getEntries(QueryKey key) {
+        Occupancy occupancy = occupancies.get(key);
+        return occupancy == null ? 0 : occupancy.entries.get();
+    }
+
+    public long getBytes(QueryKey key) {
+        Occupancy occupancy = occupancies.get(key);
+        return occupancy == null ? 0 : occupancy.bytes.get();
+    }
+
+    /**
+     * @return The number of shed or dropped data
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public BackpressurePolicy getPolicy() {
+        return policy;
+    }
+
+    private Occupancy getOccupancy(QueryKey key) {
+        Occupancy occupancy = occupancies.get(key);
+
+        if (occupancy == null) {
+            Occupancy created = new Occupancy();
+            occupancy = occupancies.putIfAbsent(key, created);
+
+            if (occupancy == null) {
+                occupancy = created;
+            }
+        }
+
+        return occupancy;
+    }
+
+    private static int sizeOf(Data data) {
+        return data instanceof SizedData ? ((SizedData) data).getEstimatedSize() : DEFAULT_DATA_SIZE;
+    }
+
+    private static int priorityOf(Data data) {
+        return data instanceof PrioritizedData ? ((PrioritizedData) data).getPriority() : PrioritizedData.DEFAULT_PRIORITY;
+    }
+
+    private static final class Occupancy {
+        private final AtomicInteger entries = new AtomicInteger();
+        private final AtomicLong bytes = new AtomicLong();
+
+        void add(int entries, long bytes) {
+            this.entries.addAndGet(entries);
+            this.bytes.addAndGet(bytes);
+        }
+
+        /**
+         * Adds an entry only if it fits into the limits, a limit of zero or less means unbounded.
+         *
+         * @return Whether the entry was added
+         */
+        boolean tryAdd(long size, int maxEntries, long maxBytes) {
+            int currentEntries;
+
+            do {
+                currentEntries = entries.get();
+
+                if (exceeds(currentEntries + 1, maxEntries)) {
+                    return false;
+                }
+            } while (!entries.compareAndSet(currentEntries, currentEntries + 1));
+
+            long currentBytes;
+
+            do {
+                currentBytes = bytes.get();
+
+                if (exceeds(currentBytes + size, maxBytes)) {
+                    entries.decrementAndGet();
+                    return false;
+                }
+            } while (!bytes.compareAndSet(currentBytes, currentBytes + size));
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.societies.database.data.queue;
+
+import org.jooq.DSLContext;
+import org.societies.database.CachedQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents the concurrent execution of the chunks of an oversized batch.
+ * <p>
+ * Every chunk runs on its own pooled connection and is committed on its own, so the rows of different chunks
+ * are not executed in order.
+ */
+final class ChunkedExecution {
+
+    private final int chunkSize;
+    private final ExecutorService executor;
+
+    ChunkedExecution(int chunkSize, int parallelism) {
+        this.chunkSize = chunkSize;
+        this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private final AtomicInteger threads = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Batch Chunk Worker " + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Executes the rows in chunks and waits until every chunk is done.
+     *
+     * @param context  The context, which has to provide a new connection for every execution
+     * @param query    The query
+     * @param strategy The strategy, which has to be thread safe
+     * @param rows     The rows
+     * @return The failure of every chunk in order, null for committed chunks
+     */
+    RuntimeException[] execute(final DSLContext context, final CachedQuery query, final BatchStrategy strategy,
+                               List<Object[]> rows) {
+        int chunks = getChunks(rows.size());
+        ArrayList<Future<?>> futures = new ArrayList<Future<?>>(chunks);
+
+        for (int i = 0; i < chunks; i++) {
+            final List<Object[]> chunk = rows.subList(i * chunkSize, Math.min(rows.size(), (i + 1) * chunkSize));
+
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    strategy.execute(context, query, chunk);
+                }
+            }));
+        }
+
+        RuntimeException[] failures = new RuntimeException[chunks];
+        boolean interrupted = false;
+
+        for (int i = 0; i < chunks; i++) {
+            // Chunks can not be aborted once they started, so wait for their outcome in any case
+            while (true) {
+                try {
+                    futures.get(i).get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    failures[i] = cause instanceof RuntimeException ? (RuntimeException) cause : new DataException(cause);
+                    break;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        return failures;
+    }
+
+    int getChunks(int rows) {
+        return (rows + chunkSize - 1) / chunkSize;
+    }
+
+    int getChunkSize() {
+        return chunkSize;
+    }
+}
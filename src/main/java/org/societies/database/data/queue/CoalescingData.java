@@ -0,0 +1,15 @@
+package org.societies.database.data.queue;
+
+/**
+ * Represents a Data, which may be replaced by newer data of the same coalescing key while it is queued in a batch.
+ * <p>
+ * Only the last published data of a key is executed, at the position of the first one.
+ * Data with a null key is never coalesced.
+ */
+public interface CoalescingData extends Data {
+
+    /**
+     * @return The coalescing key, for example the UUID of the row
+     */
+    Object getCoalescingKey();
+}
@@ -5,6 +5,9 @@ import org.societies.database.QueryProvider;
 
 /**
  * Represents a Data
+ * <p>
+ * {@link #execute()} may be called more than once, for example to journal the data, to retry or to isolate a failed
+ * batch. It has to return the same values every time and must not have side effects.
  */
 public interface Data {
 
@@ -0,0 +1,36 @@
+package org.societies.database.data.queue;
+
+/**
+ * Gets notified about the outcome of published data.
+ * Callbacks are called by the worker thread and therefore have to return quickly.
+ */
+public interface DataCallback {
+
+    /**
+     * Ignores the outcome
+     */
+    DataCallback NONE = new DataCallback() {
+        @Override
+        public void committed(Data data) {
+        }
+
+        @Override
+        public void failed(Data data, DataException e) {
+        }
+    };
+
+    /**
+     * Called once the batch or single entry, which contains the data, was committed.
+     *
+     * @param data The data
+     */
+    void committed(Data data);
+
+    /**
+     * Called if the data is not going to be committed, for example because it was dropped or rejected.
+     *
+     * @param data The data
+     * @param e    The reason
+     */
+    void failed(Data data, DataException e);
+}
@@ -0,0 +1,124 @@
+package org.societies.database.data.queue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Represents the acknowledgement of published data.
+ * <p>
+ * Completes with the data once it was committed or fails with the {@link DataException}, if the data is not going to
+ * be committed. Published data can not be cancelled.
+ */
+public final class DataFuture implements Future<Data>, DataCallback {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile Data data;
+    private volatile DataException failure;
+
+    /** Callbacks added before this future was done, guarded by this */
+    private ArrayList<DataCallback> callbacks;
+
+    @Override
+    public void committed(Data data) {
+        this.data = data;
+        complete();
+    }
+
+    @Override
+    public void failed(Data data, DataException e) {
+        this.data = data;
+        this.failure = e;
+        complete();
+    }
+
+    private void complete() {
+        ArrayList<DataCallback> callbacks;
+
+        synchronized (this) {
+            if (isDone()) {
+                return;
+            }
+
+            done.countDown();
+            callbacks = this.callbacks;
+            this.callbacks = null;
+        }
+
+        if (callbacks != null) {
+            for (DataCallback callback : callbacks) {
+                notify(callback);
+            }
+        }
+    }
+
+    /**
+     * Adds a callback, which is called immediately if this future is already done.
+     *
+     * @param callback The callback
+     */
+    public void addCallback(DataCallback callback) {
+        synchronized (this) {
+            if (!isDone()) {
+                if (callbacks == null) {
+                    callbacks = new ArrayList<DataCallback>(1);
+                }
+
+                callbacks.add(callback);
+                return;
+            }
+        }
+
+        notify(callback);
+    }
+
+    private void notify(DataCallback callback) {
+        if (failure == null) {
+            callback.committed(data);
+        } else {
+            callback.failed(data, failure);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public Data get() throws InterruptedException, ExecutionException {
+        done.await();
+        return result();
+    }
+
+    @Override
+    public Data get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+
+        return result();
+    }
+
+    private Data result() throws ExecutionException {
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+
+        return data;
+    }
+}
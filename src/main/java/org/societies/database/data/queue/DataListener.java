@@ -0,0 +1,58 @@
+package org.societies.database.data.queue;
+
+import java.util.List;
+
+/**
+ * Gets notified when queued data leaves a {@link Queue}
+ */
+public interface DataListener {
+
+    DataListener NONE = new DataListener() {
+        @Override
+        public void committed(List<Data> batch) {
+        }
+
+        @Override
+        public void dropped(Data data) {
+        }
+
+        @Override
+        public void replaced(Data data, Data replacement) {
+        }
+
+        @Override
+        public void quarantined(Data data, boolean single, DataException cause) {
+        }
+    };
+
+    /**
+     * Called once the data has been executed.
+     *
+     * @param batch The executed data, only valid during this call
+     */
+    void committed(List<Data> batch);
+
+    /**
+     * Called if the data was dropped without being executed.
+     *
+     * @param data The data
+     */
+    void dropped(Data data);
+
+    /**
+     * Called if the data was replaced by newer data of the same {@link CoalescingData coalescing key}.
+     *
+     * @param data        The replaced data
+     * @param replacement The newer data
+     */
+    void replaced(Data data, Data replacement);
+
+    /**
+     * Called if the data failed to execute too often and was isolated from its batch.
+     *
+     * @param data   The data
+     * @param single Whether the data was published to be executed on its own
+     * @param cause  The failure
+     */
+    void quarantined(Data data, boolean single, DataException cause);
+}
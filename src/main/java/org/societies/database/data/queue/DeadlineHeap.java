@@ -0,0 +1,128 @@
+package org.societies.database.data.queue;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of {@link BatchEntry}s ordered by their deadline.
+ * <p>
+ * Every entry remembers its index in the heap, so adding, removing and polling are all O(log n).
+ */
+final class DeadlineHeap {
+
+    private BatchEntry[] heap = new BatchEntry[16];
+    private int size;
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(BatchEntry entry) {
+        return entry.heapIndex >= 0;
+    }
+
+    @Nullable
+    public BatchEntry peek() {
+        return size == 0 ? null : heap[0];
+    }
+
+    @Nullable
+    public BatchEntry poll() {
+        if (size == 0) {
+            return null;
+        }
+
+        BatchEntry first = heap[0];
+        removeAt(0);
+        return first;
+    }
+
+    public void add(BatchEntry entry) {
+        if (contains(entry)) {
+            return;
+        }
+
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size << 1);
+        }
+
+        siftUp(size++, entry);
+    }
+
+    public boolean remove(BatchEntry entry) {
+        if (!contains(entry)) {
+            return false;
+        }
+
+        removeAt(entry.heapIndex);
+        return true;
+    }
+
+    private void removeAt(int index) {
+        BatchEntry removed = heap[index];
+        removed.heapIndex = -1;
+
+        int last = --size;
+        BatchEntry moved = heap[last];
+        heap[last] = null;
+
+        if (index == last) {
+            return;
+        }
+
+        siftDown(index, moved);
+
+        if (heap[index] == moved) {
+            siftUp(index, moved);
+        }
+    }
+
+    private void siftUp(int index, BatchEntry entry) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            BatchEntry other = heap[parent];
+
+            if (other.getDeadline() <= entry.getDeadline()) {
+                break;
+            }
+
+            heap[index] = other;
+            other.heapIndex = index;
+            index = parent;
+        }
+
+        heap[index] = entry;
+        entry.heapIndex = index;
+    }
+
+    private void siftDown(int index, BatchEntry entry) {
+        int half = size >>> 1;
+
+        while (index < half) {
+            int child = (index << 1) + 1;
+            int right = child + 1;
+
+            if (right < size && heap[right].getDeadline() < heap[child].getDeadline()) {
+                child = right;
+            }
+
+            BatchEntry other = heap[child];
+
+            if (entry.getDeadline() <= other.getDeadline()) {
+                break;
+            }
+
+            heap[index] = other;
+            other.heapIndex = index;
+            index = child;
+        }
+
+        heap[index] = entry;
+        entry.heapIndex = index;
+    }
+}
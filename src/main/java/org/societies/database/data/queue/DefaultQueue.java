@@ -3,49 +3,645 @@ package org.societies.database.data.queue;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import gnu.trove.map.hash.THashMap;
-import gnu.trove.procedure.TObjectProcedure;
 import org.jetbrains.annotations.Nullable;
+import org.jooq.Configuration;
+import org.jooq.ConnectionProvider;
 import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultConnectionProvider;
 import org.societies.database.QueryKey;
 import org.societies.database.QueryProvider;
+import org.societies.database.data.metrics.FlushReason;
+import org.societies.database.data.metrics.QueueMetrics;
 
-import java.util.LinkedList;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Represents a BatchQueue
+ * <p>
+ * Batches which hold data are kept in a {@link DeadlineHeap}, so the next deadline is known without scanning
+ * every {@link QueryKey} and expired batches are moved out in O(log n).
+ * <p>
+ * The queue is only used by the thread of its worker, so it has to be configured before it is {@link #start() started}.
  */
 public final class DefaultQueue implements Queue {
 
     private final long autoFlushInterval;
-    private final BatchSettings batchSettings;
+    private BatchSettings batchSettings;
+    private final Capacity capacity;
 
     private final THashMap<QueryKey, BatchEntry> queues = new THashMap<QueryKey, BatchEntry>();
+    private final DeadlineHeap deadlines = new DeadlineHeap();
     private long lastAutoFlush = System.currentTimeMillis();
 
-    private final LinkedList<Entry> pending = new LinkedList<Entry>();
+    private final Lanes pending = new Lanes();
+    /** The lanes of keys, which are not in the {@link Lane#NORMAL normal} lane */
+    private final THashMap<QueryKey, Lane> lanes = new THashMap<QueryKey, Lane>();
 
+    @Nullable
+    private Journal journal;
+
+    private BatchStrategy batchStrategy = JdbcBatchStrategy.INSTANCE;
+    private boolean directBindBuffers;
+
+    /** The execution of oversized batches in parallel chunks or null if disabled */
+    private ChunkedExecution chunkedExecution;
+    /** The keys, whose oversized batches are executed in parallel chunks */
+    private final HashSet<QueryKey> parallelKeys = new HashSet<QueryKey>();
+    private QueueMetrics metrics = QueueMetrics.NONE;
+
+    /** The maximum number of entries and rows per transaction, 0 if every entry commits on its own */
+    private int transactionMaxEntries;
+    private int transactionMaxRows;
+
+    /** The entries of the current transaction in execution order */
+    private final ArrayList<Entry> transaction = new ArrayList<Entry>();
+
+    private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    private Quarantine quarantine = new Quarantine();
+
+    /** The failed entries, which back off until they are retried */
+    private final IdentityHashMap<Entry, Retry> retries = new IdentityHashMap<Entry, Retry>();
+    private final PriorityQueue<Retry> retrying = new PriorityQueue<Retry>(11, new Comparator<Retry>() {
+        @Override
+        public int compare(Retry o1, Retry o2) {
+            return o1.at < o2.at ? -1 : (o1.at == o2.at ? 0 : 1);
+        }
+    });
+
+    /** The time until the whole queue backs off after a transient failure */
+    private long pausedUntil;
+    private int pauses;
+
+    /** The number of quarantined data while isolating an entry */
+    private int isolated;
+
+    /** Whether the worker started to use this queue, it can not be configured afterwards */
+    private volatile boolean started;
+
+    /** Releases the capacity of data, which left the queue, and acknowledges {@link TrackedData} */
+    private final DataListener listener = new DataListener() {
+        @Override
+        public void committed(List<Data> batch) {
+            capacity.committed(batch);
+
+            if (!batch.isEmpty()) {
+                // Results may have been cached again while the data was queued, every entry has a single key
+                Data first = batch.get(0);
+                QueryProvider provider = first.getQueryProvider();
+
+                if (provider != null) {
+                    provider.invalidate(first.getQueryKey());
+                }
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                Data data = batch.get(i);
+
+                if (data instanceof TrackedData) {
+                    ((TrackedData) data).committed();
+                }
+            }
+        }
+
+        @Override
+        public void dropped(Data data) {
+            capacity.dropped(data);
+            metrics.dropped(data.getQueryKey());
+
+            if (data instanceof TrackedData) {
+                ((TrackedData) data).failed(new DataException("The data was dropped, because the queue is full!"));
+            }
+        }
+
+        @Override
+        public void quarantined(Data data, boolean single, DataException cause) {
+            capacity.quarantined(data, single, cause);
+            metrics.quarantined(data.getQueryKey());
+            isolated++;
+
+            if (data instanceof TrackedData) {
+                TrackedData tracked = (TrackedData) data;
+                quarantine.add(tracked.getData(), single, cause);
+                tracked.failed(cause);
+            } else {
+                quarantine.add(data, single, cause);
+            }
+        }
+
+        @Override
+        public void replaced(Data data, Data replacement) {
+            capacity.replaced(data, replacement);
+            metrics.replaced(data.getQueryKey());
+
+            // The replaced data is committed together with its replacement, which is tracked if the data was
+            if (data instanceof TrackedData) {
+                ((TrackedData) replacement).supersede((TrackedData) data);
+            }
+        }
+    };
+
+
+    public DefaultQueue(long autoFlushInterval, long maxIdle, TimeUnit unit, int criticalBatchSize) {
+        this(autoFlushInterval, maxIdle, unit, criticalBatchSize, Capacity.unbounded());
+    }
 
     @Inject
     public DefaultQueue(@Named("auto-flush-interval") long autoFlushInterval,
                         @Named("max-batch-idle") long maxIdle,
                         @Named("queue-time-unit") TimeUnit unit,
-                        @Named("critical-batch-size") int criticalBatchSize) {
+                        @Named("critical-batch-size") int criticalBatchSize,
+                        Capacity capacity) {
         this.autoFlushInterval = unit.toMillis(autoFlushInterval);
         this.batchSettings = new BatchSettings(criticalBatchSize, unit.toMillis(maxIdle));
+        this.capacity = capacity;
+    }
+
+    /**
+     * Sets the journal, which records the data published to this queue.
+     * Recovered data should be {@link Journal#replay(Queue) replayed} before the worker is started.
+     *
+     * @param journal The journal
+     */
+    @Inject(optional = true)
+    public void setJournal(@Nullable Journal journal) {
+        checkConfigurable();
+
+        this.journal = journal;
+    }
+
+    /**
+     * Sets the strategy, which executes the rows of batches published to this queue.
+     *
+     * @param batchStrategy The strategy
+     */
+    @Inject(optional = true)
+    public void setBatchStrategy(BatchStrategy batchStrategy) {
+        checkConfigurable();
+
+        this.batchStrategy = batchStrategy;
+    }
+
+    /**
+     * Stores the primitive bind values of batches off-heap, which keeps very large batches out of the heap.
+     *
+     * @param directBindBuffers Whether the bind buffers are direct
+     */
+    @Inject(optional = true)
+    public void setDirectBindBuffers(@Named("direct-bind-buffers") boolean directBindBuffers) {
+        checkConfigurable();
+
+        this.directBindBuffers = directBindBuffers;
+    }
+
+    /**
+     * Executes oversized batches of {@link #setParallel(QueryKey) parallel} keys in chunks on several connections
+     * at once. This only applies if the queue does not execute in transactions.
+     *
+     * @param chunkSize   The number of rows of a chunk, larger batches are split
+     * @param parallelism The maximum number of chunks executed at once, which should leave connections of the pool
+     *                    for other users
+     */
+    @Inject(optional = true)
+    public void setParallelChunking(@Named("parallel-chunk-size") int chunkSize,
+                                    @Named("parallel-chunk-threads") int parallelism) {
+        checkConfigurable();
+
+        if (chunkSize < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("The chunk size and the parallelism must be positive!");
+        }
+
+        this.chunkedExecution = new ChunkedExecution(chunkSize, parallelism);
+
+        for (QueryKey key : parallelKeys) {
+            applyChunking(key);
+        }
+    }
+
+    /**
+     * Allows the oversized batches of a key to be executed in parallel chunks.
+     * The rows of such batches are no longer executed in order.
+     *
+     * @param key The key
+     */
+    public void setParallel(QueryKey key) {
+        checkConfigurable();
+
+        parallelKeys.add(key);
+        applyChunking(key);
+    }
+
+    private void applyChunking(QueryKey key) {
+        BatchEntry entry = queues.get(key);
+
+        if (entry != null) {
+            entry.chunks = chunkedExecution;
+        }
+    }
+
+    /**
+     * Adapts the critical size and the idle time of every batch to its execution latency.
+     * The configured critical batch size and maximum idle time become the upper bounds.
+     *
+     * @param minBatchSize  The lower bound of the critical batch size
+     * @param minIdle       The lower bound of the idle time
+     * @param targetLatency The execution latency a batch should not exceed
+     * @param unit          The unit of the times
+     */
+    @Inject(optional = true)
+    public void setAdaptiveBatching(@Named("adaptive-min-batch-size") int minBatchSize,
+                                    @Named("adaptive-min-batch-idle") long minIdle,
+                                    @Named("adaptive-target-latency") long targetLatency,
+                                    @Named("queue-time-unit") TimeUnit unit) {
+        checkConfigurable();
+
+        if (minBatchSize < 1 || minBatchSize > batchSettings.getCriticalBatchSize()) {
+            throw new IllegalArgumentException("The minimum batch size must be between 1 and the critical batch size!");
+        }
+
+        this.batchSettings = new BatchSettings(batchSettings.getCriticalBatchSize(), batchSettings.getMaxIdle(),
+                minBatchSize, Math.min(unit.toMillis(minIdle), batchSettings.getMaxIdle()), unit.toNanos(targetLatency));
+    }
+
+    /**
+     * Sets the number of entries each lane may execute per round before the lower lanes get their turn.
+     *
+     * @param high   The weight of the {@link Lane#HIGH high} lane
+     * @param normal The weight of the {@link Lane#NORMAL normal} lane
+     * @param low    The weight of the {@link Lane#LOW low} lane
+     */
+    @Inject(optional = true)
+    public void setLaneWeights(@Named("lane-weight-high") int high,
+                               @Named("lane-weight-normal") int normal,
+                               @Named("lane-weight-low") int low) {
+        checkConfigurable();
+
+        pending.setWeights(high, normal, low);
+    }
+
+    /**
+     * Executes the entries of a lane only if every higher lane is empty, which may starve the lower lanes.
+     *
+     * @param strict Whether the lanes are scheduled strictly by priority
+     */
+    @Inject(optional = true)
+    public void setStrictLanes(@Named("strict-lanes") boolean strict) {
+        checkConfigurable();
+
+        pending.setStrict(strict);
+    }
+
+    /**
+     * Sets the lane of the entries of a key. Single data, which is {@link PrioritizedData prioritized}, uses the
+     * lane of its priority instead.
+     *
+     * @param key  The key
+     * @param lane The lane
+     */
+    public void setLane(QueryKey key, Lane lane) {
+        checkConfigurable();
+
+        if (lane == Lane.NORMAL) {
+            lanes.remove(key);
+        } else {
+            lanes.put(key, lane);
+        }
+    }
+
+    public Lane getLane(QueryKey key) {
+        Lane lane = lanes.get(key);
+        return lane == null ? Lane.NORMAL : lane;
+    }
+
+    private Lane laneOf(Entry entry) {
+        if (entry instanceof SingleEntry) {
+            Data data = ((SingleEntry) entry).getData();
+
+            if (data instanceof PrioritizedData) {
+                Lane lane = Lane.of(((PrioritizedData) data).getPriority());
+
+                if (lane != null) {
+                    return lane;
+                }
+            }
+        }
+
+        return getLane(entry.getQueryKey());
+    }
+
+    /**
+     * Sets the policy of retrying failed entries.
+     *
+     * @param retryPolicy The policy
+     */
+    @Inject(optional = true)
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        checkConfigurable();
+
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets the store of data, which failed too often.
+     *
+     * @param quarantine The quarantine
+     */
+    @Inject(optional = true)
+    public void setQuarantine(Quarantine quarantine) {
+        checkConfigurable();
+
+        this.quarantine = quarantine;
+    }
+
+    /**
+     * Sets the metrics, which record the activity of this queue.
+     *
+     * @param metrics The metrics
+     */
+    @Inject(optional = true)
+    public void setMetrics(QueueMetrics metrics) {
+        checkConfigurable();
+
+        this.metrics = metrics;
+    }
+
+    /**
+     * Executes the pending entries of a flush cycle in transactions on a single connection instead of committing
+     * every entry on its own. A failed transaction is rolled back and all of its entries are requeued.
+     *
+     * @param maxEntries The maximum number of entries per transaction, 0 to disable transactions
+     * @param maxRows    The maximum number of rows per transaction, a transaction holds at least one entry
+     */
+    @Inject(optional = true)
+    public void setTransactionLimits(@Named("transaction-max-entries") int maxEntries,
+                                     @Named("transaction-max-rows") int maxRows) {
+        checkConfigurable();
+
+        if (maxEntries < 0 || maxRows < 0) {
+            throw new IllegalArgumentException("The transaction limits must not be negative!");
+        }
+
+        this.transactionMaxEntries = maxEntries;
+        this.transactionMaxRows = maxRows == 0 ? Integer.MAX_VALUE : maxRows;
+    }
+
+    @Override
+    public void start() {
+        started = true;
+    }
+
+    private void checkConfigurable() {
+        if (started) {
+            throw new IllegalStateException("The queue has to be configured before it is started!");
+        }
     }
 
     @Override
     public void execute(DSLContext context) throws DataException {
-        Entry entry;
+        if (journal != null) {
+            journal.sync(System.currentTimeMillis());
+        }
+
+        DataException failure = null;
+
+        // Failing keys back off, so the healthy ones keep executing
+        while (isReady()) {
+            DataException e = transactionMaxEntries > 0 ? executeTransaction(context) : executeNext(context);
+
+            if (failure == null) {
+                failure = e;
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Executes the next pending entry on its own.
+     *
+     * @return The failure or null if the entry was committed
+     */
+    @Nullable
+    private DataException executeNext(DSLContext context) {
+        Entry entry = pending.poll();
+        int rows = entry.size();
+        long start = System.nanoTime();
+
+        try {
+            entry.execute(context);
+        } catch (RuntimeException e) {
+            if (entry instanceof BatchEntry) {
+                committedChunks((BatchEntry) entry);
+            }
+
+            DataException failure = e instanceof DataException ? (DataException) e : new DataException(e);
+            failed(context, entry, failure);
+            return failure;
+        }
+
+        metrics.executed(entry.getQueryKey(), rows, System.nanoTime() - start);
+        committed(entry, rows);
+        return null;
+    }
+
+    /**
+     * Executes pending entries up to the transaction limits in a single transaction.
+     *
+     * @return The failure or null if the transaction was committed
+     */
+    @Nullable
+    private DataException executeTransaction(DSLContext context) {
+        Configuration configuration = context.configuration();
+        ConnectionProvider connectionProvider = configuration.connectionProvider();
+
+        Connection connection;
+
+        try {
+            connection = connectionProvider.acquire();
+        } catch (RuntimeException e) {
+            DataException failure = new DataException(e);
+            metrics.failed(null);
+            pause();
+            return failure;
+        }
+
+        boolean committed = false;
+        Exception failure = null;
+        Entry failing = null;
+
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
 
-        while ((entry = pending.poll()) != null) {
             try {
-                entry.execute(context);
-            } catch (RuntimeException e) {
-                pending.offer(entry);
-                throw e;
+                prepareTransaction(DSL.using(configuration.derive(new DefaultConnectionProvider(connection))));
+                connection.commit();
+                committed = true;
+            } finally {
+                if (!committed) {
+                    rollbackQuietly(connection);
+                }
+
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = e;
+            // The last entry of the transaction failed to execute
+            failing = transaction.isEmpty() ? null : transaction.get(transaction.size() - 1);
+        } finally {
+            connectionProvider.release(connection);
+        }
+
+        if (!committed) {
+            // Requeue the whole transaction in its original order
+            for (int i = transaction.size() - 1; i >= 0; i--) {
+                Entry entry = transaction.get(i);
+                entry.rollback();
+                pending.addFirst(entry, laneOf(entry));
+            }
+
+            transaction.clear();
+
+            DataException e = failure instanceof DataException ? (DataException) failure : new DataException(failure);
+
+            if (failing != null && !RetryPolicy.isTransient(e)) {
+                pending.remove(failing);
+                failed(context, failing, e);
+            } else {
+                metrics.failed(null);
+                pause();
             }
+
+            return e;
+        }
+
+        for (Entry entry : transaction) {
+            int rows = entry.size();
+            entry.commit();
+            committed(entry, rows);
+        }
+
+        transaction.clear();
+        return null;
+    }
+
+    /**
+     * Handles a failed entry, which is no longer pending. Transient failures pause the whole queue, other failures
+     * back off the entry and quarantine its failing data after too many attempts.
+     */
+    private void failed(DSLContext context, Entry entry, DataException cause) {
+        metrics.failed(entry.getQueryKey());
+
+        if (RetryPolicy.isTransient(cause)) {
+            pending.addFirst(entry, laneOf(entry));
+            pause();
+            return;
+        }
+
+        Retry retry = retries.get(entry);
+
+        if (retry == null) {
+            retries.put(entry, retry = new Retry(entry));
+        }
+
+        retry.attempts++;
+
+        if (retryPolicy.isExhausted(retry.attempts)) {
+            retries.remove(entry);
+
+            int rows = entry.size();
+            isolated = 0;
+            entry.isolate(context);
+
+            committed(entry, rows - isolated);
+            return;
+        }
+
+        retry.at = System.currentTimeMillis() + retryPolicy.getBackoff(retry.attempts);
+        retrying.offer(retry);
+    }
+
+    private void pause() {
+        pausedUntil = System.currentTimeMillis() + retryPolicy.getBackoff(++pauses);
+    }
+
+    private void prepareTransaction(DSLContext context) throws DataException {
+        int rows = 0;
+        Entry entry;
+
+        while (transaction.size() < transactionMaxEntries && rows < transactionMaxRows
+                && (entry = pending.poll()) != null) {
+            int size = entry.size();
+            long start = System.nanoTime();
+
+            transaction.add(entry);
+            rows += size;
+            entry.prepare(context);
+
+            metrics.executed(entry.getQueryKey(), size, System.nanoTime() - start);
+        }
+    }
+
+    private static void rollbackQuietly(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException ignored) {
+            // The transaction is requeued anyway
+        }
+    }
+
+    private void committed(Entry entry, int rows) {
+        pauses = 0;
+
+        if (!retries.isEmpty()) {
+            retries.remove(entry);
+        }
+
+        long latency = System.nanoTime() - entry.getEnqueued();
+        metrics.committed(entry.getQueryKey(), rows, latency);
+        metrics.committed(laneOf(entry), rows, latency);
+
+        if (entry instanceof BatchEntry) {
+            BatchEntry batch = (BatchEntry) entry;
+
+            if (journal != null) {
+                batch.releaseJournal(journal);
+            }
+
+            rescheduled(batch);
+        } else if (journal != null && entry instanceof SingleEntry) {
+            ((SingleEntry) entry).releaseJournal(journal);
+        }
+    }
+
+    /**
+     * Records the chunks of a batch, which were committed although other chunks failed.
+     */
+    private void committedChunks(BatchEntry batch) {
+        int rows = batch.takeCommittedChunks();
+
+        if (rows == 0) {
+            return;
+        }
+
+        long latency = System.nanoTime() - batch.getEnqueued();
+        metrics.committed(batch.getQueryKey(), rows, latency);
+        metrics.committed(laneOf(batch), rows, latency);
+
+        if (journal != null) {
+            batch.rejournal(journal);
         }
     }
 
@@ -57,56 +653,153 @@ public final class DefaultQueue implements Queue {
         BatchEntry entry = getBatchEntry(key);
 
         if (entry == null) {
-            queues.put(key, entry = new BatchEntry(batchSettings, key, queryProvider));
+            queues.put(key, entry = new BatchEntry(batchSettings, key, queryProvider, listener, batchStrategy,
+                    directBindBuffers));
+
+            if (parallelKeys.contains(key)) {
+                entry.chunks = chunkedExecution;
+            }
+        }
+
+        long now = System.currentTimeMillis();
+
+        if (deadlines.isEmpty() && isAutoFlushDue(now)) {
+            // Nothing was buffered, so the auto flush starts over with this data
+            lastAutoFlush = now;
         }
 
-        entry.offer(data);
+        if (journal != null) {
+            entry.journaled(journal.append(data, false), journal.getSegments());
+        }
+
+        metrics.published(key);
+
+        if (entry.offer(data, now) && !entry.flushed) {
+            deadlines.add(entry);
+        }
+
+        if (capacity.getPolicy() == BackpressurePolicy.DROP_OLDEST) {
+            dropOldest(entry);
+        }
 
         publishBatch(entry);
     }
 
+    /**
+     * Drops the oldest data of the key or, for the global limits, of the batch with the earliest deadline
+     * until the capacity is no longer exceeded. Pending single data is never dropped.
+     *
+     * @param entry The batch of the key, which just received data, or null if the key has no batch
+     */
+    private void dropOldest(@Nullable BatchEntry entry) {
+        while (entry != null && capacity.isExceeded(entry.getQueryKey()) && !entry.isEmpty()) {
+            listener.dropped(entry.poll());
+        }
+
+        while (capacity.isExceeded()) {
+            BatchEntry oldest = deadlines.peek();
+
+            if (oldest == null) {
+                oldest = entry;
+            }
+
+            if (oldest == null || oldest.isEmpty()) {
+                break;
+            }
+
+            listener.dropped(oldest.poll());
+
+            if (oldest.isEmpty()) {
+                deadlines.remove(oldest);
+            }
+        }
+    }
+
     public void publishBatch(BatchEntry entry) {
-        if (entry.isReady()) {
-            flush(entry);
+        if (entry.reachedCriticalSize()) {
+            flushBatch(entry, FlushReason.SIZE);
         }
     }
 
     @Override
     public void publishSingle(Data data) {
-        flush(new SingleEntry(data));
+        SingleEntry entry = new SingleEntry(data, listener);
+        metrics.published(data.getQueryKey());
+
+        if (journal != null) {
+            entry.segment = journal.append(data, true);
+        }
+
+        if (capacity.getPolicy() == BackpressurePolicy.DROP_OLDEST) {
+            dropOldest(queues.get(data.getQueryKey()));
+        }
+
+        flush(entry);
     }
 
     @Override
     public boolean isReady() {
-        return !pending.isEmpty();
+        return !pending.isEmpty() && System.currentTimeMillis() >= pausedUntil;
     }
 
     @Override
     public void flushReady() {
-        queues.forEachValue(new TObjectProcedure<BatchEntry>() {
-            @Override
-            public boolean execute(BatchEntry entry) {
-                if (entry.isReady()) {
-                    flush(entry);
-                }
-                return true;
-            }
-        });
+        long now = System.currentTimeMillis();
+
+        while (!retrying.isEmpty() && retrying.peek().at <= now) {
+            Entry retried = retrying.poll().entry;
+            pending.offer(retried, laneOf(retried));
+        }
+
+        if (isAutoFlushDue(now)) {
+            lastAutoFlush = now;
+            flushAll(FlushReason.AUTO_FLUSH);
+            return;
+        }
+
+        BatchEntry entry;
+
+        while ((entry = deadlines.peek()) != null && entry.reachedDeadLine(now)) {
+            flushBatch(entry, FlushReason.IDLE);
+        }
     }
 
     @Override
     public void flushAll() {
-        queues.forEachValue(new TObjectProcedure<BatchEntry>() {
-            @Override
-            public boolean execute(BatchEntry entry) {
-                flush(entry);
-                return true;
-            }
-        });
+        flushAll(FlushReason.STOP);
+    }
+
+    private void flushAll(FlushReason reason) {
+        BatchEntry entry;
+
+        while ((entry = deadlines.peek()) != null) {
+            flushBatch(entry, reason);
+        }
     }
 
     public void flush(Entry entry) {
-        pending.offer(entry);
+        pending.offer(entry, laneOf(entry));
+    }
+
+    /**
+     * Schedules a batch again after it was executed, data may have arrived while it was pending.
+     */
+    private void rescheduled(BatchEntry entry) {
+        entry.flushed = false;
+
+        if (!entry.isEmpty()) {
+            deadlines.add(entry);
+        }
+    }
+
+    private void flushBatch(BatchEntry entry, FlushReason reason) {
+        deadlines.remove(entry);
+
+        if (!entry.flushed) {
+            entry.flushed = true;
+            pending.offer(entry, getLane(entry.getQueryKey()));
+            metrics.flushed(entry.getQueryKey(), reason);
+        }
     }
 
     @Nullable
@@ -116,7 +809,55 @@ public final class DefaultQueue implements Queue {
 
     @Override
     public boolean isFlushPending() {
-        return (System.currentTimeMillis() - autoFlushInterval) > lastAutoFlush;
+        long now = System.currentTimeMillis();
+
+        if (!retrying.isEmpty() && retrying.peek().at <= now) {
+            return true;
+        }
+
+        if (deadlines.isEmpty()) {
+            return false;
+        }
+
+        return isAutoFlushDue(now) || deadlines.peek().reachedDeadLine(now);
+    }
+
+    @Override
+    public long getNextDeadline() {
+        long deadline = Long.MAX_VALUE;
+        BatchEntry next = deadlines.peek();
+
+        if (next != null) {
+            deadline = Math.min(next.getDeadline(), lastAutoFlush + autoFlushInterval);
+        }
+
+        if (!retrying.isEmpty()) {
+            deadline = Math.min(deadline, retrying.peek().at);
+        }
+
+        if (!pending.isEmpty()) {
+            deadline = Math.min(deadline, pausedUntil);
+        }
+
+        return deadline;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return pending.isEmpty() && retrying.isEmpty() && deadlines.isEmpty();
+    }
+
+    public Quarantine getQuarantine() {
+        return quarantine;
+    }
+
+    @Override
+    public Capacity getCapacity() {
+        return capacity;
+    }
+
+    private boolean isAutoFlushDue(long now) {
+        return now - autoFlushInterval >= lastAutoFlush;
     }
 
 
@@ -124,9 +865,37 @@ public final class DefaultQueue implements Queue {
         private final int criticalBatchSize;
         private final long maxIdle;
 
+        private final int minBatchSize;
+        private final long minIdle;
+        /** The target latency in nanoseconds, 0 if the batch size is static */
+        private final long targetLatency;
+
         private BatchSettings(int criticalBatchSize, long maxIdle) {
+            this(criticalBatchSize, maxIdle, criticalBatchSize, maxIdle, 0);
+        }
+
+        private BatchSettings(int criticalBatchSize, long maxIdle, int minBatchSize, long minIdle, long targetLatency) {
             this.criticalBatchSize = criticalBatchSize;
             this.maxIdle = maxIdle;
+            this.minBatchSize = minBatchSize;
+            this.minIdle = minIdle;
+            this.targetLatency = targetLatency;
+        }
+
+        public boolean isAdaptive() {
+            return targetLatency > 0;
+        }
+
+        public int getMinBatchSize() {
+            return minBatchSize;
+        }
+
+        public long getMinIdle() {
+            return minIdle;
+        }
+
+        public long getTargetLatency() {
+            return targetLatency;
         }
 
         public long getMaxIdle() {
@@ -137,4 +906,17 @@ public final class DefaultQueue implements Queue {
             return criticalBatchSize;
         }
     }
+
+    /**
+     * Represents the retry state of a failed entry
+     */
+    private static final class Retry {
+        private final Entry entry;
+        private int attempts;
+        private long at;
+
+        private Retry(Entry entry) {
+            this.entry = entry;
+        }
+    }
 }
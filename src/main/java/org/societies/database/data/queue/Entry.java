@@ -1,6 +1,7 @@
 package org.societies.database.data.queue;
 
 import org.jooq.DSLContext;
+import org.societies.database.QueryKey;
 
 /**
  *
@@ -9,5 +10,43 @@ public interface Entry {
 
     public void execute(DSLContext context) throws DataException;
 
+    /**
+     * Executes this entry without acknowledging its data, so it can be committed together with other entries.
+     * If the execution fails the entry is restored as if it was never executed.
+     *
+     * @param context The context of the transaction
+     * @throws DataException If the execution failed
+     */
+    void prepare(DSLContext context) throws DataException;
+
+    /**
+     * Acknowledges the data of the prepared execution after the transaction was committed.
+     */
+    void commit();
+
+    /**
+     * Restores the data of the prepared execution after the transaction was rolled back.
+     */
+    void rollback();
+
+    /**
+     * Executes the data of this entry separately, to commit the healthy data and quarantine the failing data.
+     *
+     * @param context The context
+     */
+    void isolate(DSLContext context);
+
+    /**
+     * @return The number of rows this entry executes, including the rows of a prepared execution
+     */
+    int size();
+
+    QueryKey getQueryKey();
+
+    /**
+     * @return The {@link System#nanoTime() nano time} at which the oldest data of this entry was queued
+     */
+    long getEnqueued();
+
     boolean isReady();
 }
@@ -0,0 +1,25 @@
+package org.societies.database.data.queue;
+
+import org.jooq.DSLContext;
+import org.societies.database.BindBuffer;
+import org.societies.database.CachedQuery;
+
+import java.util.List;
+
+/**
+ * Represents a BatchStrategy, which executes every row in a JDBC batch
+ */
+public final class JdbcBatchStrategy implements BufferedBatchStrategy {
+
+    public static final JdbcBatchStrategy INSTANCE = new JdbcBatchStrategy();
+
+    @Override
+    public void execute(DSLContext context, CachedQuery query, List<Object[]> rows) {
+        query.execute(context, rows);
+    }
+
+    @Override
+    public void execute(DSLContext context, CachedQuery query, BindBuffer buffer) {
+        query.execute(context, buffer);
+    }
+}
@@ -0,0 +1,727 @@
+package org.societies.database.data.queue;
+
+import net.catharos.lib.core.lang.Closable;
+import org.joda.time.DateTime;
+import org.jooq.types.UByte;
+import org.jooq.types.UInteger;
+import org.jooq.types.ULong;
+import org.jooq.types.UShort;
+import org.societies.database.BindSink;
+import org.societies.database.QueryKey;
+import org.societies.database.QueryProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents a write-ahead Journal of the data published to a {@link DefaultQueue}.
+ * <p>
+ * The bound values of every published data are appended to a ring of memory-mapped segments, together with the id
+ * its {@link QueryKey} was {@link #register(int, QueryKey, QueryProvider) registered} with. {@link BoundData} is
+ * written straight into the mapped segment without allocating, other data is journaled from the values of an
+ * additional {@link Data#execute()}. The segments are synced in groups, depending on the sync
+ * interval. A segment is truncated once all of its data was committed and reused afterwards. Data which was not
+ * committed before a crash is recovered when the journal is opened and {@link #replay(Queue) replayed} into the queue.
+ * Committed data, which shares a segment with uncommitted data, is recovered as well and may be executed twice.
+ * <p>
+ * The journal is only used by the thread of its queue, except for registering keys before the worker starts.
+ */
+public final class Journal implements Closable {
+
+    private static final byte NULL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte BYTE = 2;
+    private static final byte SHORT = 3;
+    private static final byte INTEGER = 4;
+    private static final byte LONG = 5;
+    private static final byte FLOAT = 6;
+    private static final byte DOUBLE = 7;
+    private static final byte STRING = 8;
+    private static final byte BYTES = 9;
+    private static final byte UUID_TYPE = 10;
+    private static final byte TIMESTAMP = 11;
+    private static final byte DATE = 12;
+    private static final byte DATE_TIME = 13;
+    private static final byte UBYTE = 14;
+    private static final byte USHORT = 15;
+    private static final byte UINTEGER = 16;
+    private static final byte ULONG = 17;
+
+    /** The size of the record header: key id, single flag and value count */
+    private static final int RECORD_HEADER = 4 + 1 + 2;
+
+    private final JournalSegment[] segments;
+    private final int segmentSize;
+    private final long syncInterval;
+
+    private final ConcurrentHashMap<QueryKey, Integer> ids = new ConcurrentHashMap<QueryKey, Integer>();
+    private final ConcurrentHashMap<Integer, Registration> registrations = new ConcurrentHashMap<Integer, Registration>();
+
+    private final ArrayList<Recovered> recovered = new ArrayList<Recovered>();
+
+    /** The segment new records are appended to, -1 if every segment is in use */
+    private int active = -1;
+    private long sequence;
+    private long lastSync = System.currentTimeMillis();
+
+    private long unjournaled;
+
+    /** Writes the values of bound data into the active segment */
+    private final JournalSink sink = new JournalSink();
+
+    /**
+     * Opens a journal and recovers the records of an earlier run.
+     *
+     * @param directory    The directory of the segment files
+     * @param segments     The number of segments
+     * @param segmentSize  The size of a segment in bytes
+     * @param syncInterval The interval to sync the segments to disk in, 0 to sync every record,
+     *                     less than 0 to leave it to the operating system
+     * @param unit         The unit of the interval
+     * @throws IOException If the segments could not be mapped
+     */
+    public Journal(File directory, int segments, int segmentSize, long syncInterval, TimeUnit unit) throws IOException {
+        if (segments < 2) {
+            throw new IllegalArgumentException("The journal needs at least two segments!");
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create the journal directory " + directory + "!");
+        }
+
+        this.segments = new JournalSegment[segments];
+        this.segmentSize = segmentSize;
+        this.syncInterval = syncInterval < 0 ? -1 : unit.toMillis(syncInterval);
+
+        for (int i = 0; i < segments; i++) {
+            this.segments[i] = new JournalSegment(new File(directory, "journal-" + i + ".seg"), segmentSize);
+        }
+
+        recover();
+    }
+
+    private void recover() {
+        Integer[] order = new Integer[segments.length];
+        int loaded = 0;
+
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].load()) {
+                order[loaded++] = i;
+                sequence = Math.max(sequence, segments[i].getSequence());
+            }
+        }
+
+        order = Arrays.copyOf(order, loaded);
+
+        // Replay the oldest segment first
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                long first = segments[a].getSequence();
+                long second = segments[b].getSequence();
+                return first < second ? -1 : (first == second ? 0 : 1);
+            }
+        });
+
+        for (Integer index : order) {
+            JournalSegment segment = segments[index];
+            ByteBuffer buffer = segment.getBuffer();
+
+            int length;
+            while (buffer.remaining() >= 4 && (length = buffer.getInt()) > 0 && length <= buffer.remaining()) {
+                int end = buffer.position() + length;
+
+                try {
+                    recovered.add(read(buffer, index));
+                } catch (RuntimeException e) {
+                    // The rest of this segment is corrupted
+                    break;
+                }
+
+                segment.outstanding++;
+                buffer.position(end);
+            }
+        }
+
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].outstanding == 0) {
+                activate(i);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Registers a key, so its data is journaled and can be replayed.
+     * The id has to stay the same between runs.
+     *
+     * @param id       The id of the key
+     * @param key      The key
+     * @param provider The query provider of the key
+     */
+    public void register(int id, QueryKey<?> key, QueryProvider provider) {
+        ids.put(key, id);
+        registrations.put(id, new Registration(key, provider));
+    }
+
+    /**
+     * Replays the recovered data into a queue, which has to use this journal.
+     * Must be called before the worker of the queue is started.
+     *
+     * @param queue The queue
+     * @return The number of replayed data
+     */
+    public int replay(Queue queue) {
+        int replayed = 0;
+
+        for (Recovered record : recovered) {
+            Registration registration = registrations.get(record.id);
+
+            if (registration == null) {
+                // Nobody knows this key anymore, so its data can't be executed
+                release(record.origin, 1);
+                continue;
+            }
+
+            JournaledData data = new JournaledData(
+                    registration.provider, registration.key, record.values, record.origin, record.single
+            );
+
+            queue.getCapacity().reserve(data);
+
+            if (record.single) {
+                queue.publishSingle(data);
+            } else {
+                queue.publishBatch(data);
+            }
+
+            replayed++;
+        }
+
+        recovered.clear();
+        recovered.trimToSize();
+        return replayed;
+    }
+
+    /**
+     * Appends the values of data to the journal.
+     * {@link BoundData} is written straight into the segment, other data is journaled from its executed values.
+     *
+     * @param data   The data
+     * @param single Whether the data is executed on its own
+     * @return The segment, which holds the data until it is committed or -1 if the data is not journaled
+     */
+    int append(Data data, boolean single) {
+        int origin = data instanceof JournaledData ? ((JournaledData) data).origin : -1;
+        Integer id = ids.get(data.getQueryKey());
+
+        if (id == null) {
+            return origin;
+        }
+
+        Data unwrapped = data instanceof TrackedData ? ((TrackedData) data).getData() : data;
+        boolean written = unwrapped instanceof BoundData
+                ? writeBound((BoundData) unwrapped, id, single)
+                : writeValues(data, id, single);
+
+        if (!written) {
+            unjournaled++;
+            return origin;
+        }
+
+        JournalSegment segment = segments[active];
+        segment.outstanding++;
+        segment.dirty = true;
+
+        if (origin >= 0) {
+            // The recovered data is journaled again, so its old segment no longer needs to hold it
+            release(origin, 1);
+            ((JournaledData) data).origin = -1;
+        }
+
+        if (syncInterval == 0) {
+            segment.sync();
+        } else if (syncInterval > 0) {
+            sync(System.currentTimeMillis());
+        }
+
+        return active;
+    }
+
+    private boolean writeValues(Data data, int id, boolean single) {
+        Object[] values;
+
+        try {
+            values = data.execute();
+        } catch (RuntimeException e) {
+            return false;
+        }
+
+        int size = sizeOf(values);
+
+        // The record, its length and the terminating zero length
+        if (size < 0 || 4 + size + 4 > segmentSize - JournalSegment.HEADER || !ensureCapacity(4 + size + 4)) {
+            return false;
+        }
+
+        ByteBuffer buffer = segments[active].getBuffer();
+        int start = buffer.position();
+
+        buffer.putInt(start + 4 + size, 0);
+        buffer.position(start + 4);
+        buffer.putInt(id);
+        buffer.put(single ? (byte) 1 : (byte) 0);
+        buffer.putShort((short) values.length);
+
+        for (Object value : values) {
+            write(buffer, value);
+        }
+
+        // The length is written last, so a partial record is never read
+        buffer.putInt(start, size);
+        return true;
+    }
+
+    /**
+     * Writes the bound values of data without a row of objects.
+     * Their size is unknown until they are written, so a record, which overflows its segment, is written once more
+     * to the next free segment.
+     */
+    private boolean writeBound(BoundData data, int id, boolean single) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            if (!ensureCapacity(attempt == 0 ? 4 + RECORD_HEADER + 4 : segmentSize)) {
+                return false;
+            }
+
+            ByteBuffer buffer = segments[active].getBuffer();
+            int start = buffer.position();
+            int limit = buffer.limit();
+
+            try {
+                // Keep the room for the terminating zero length
+                buffer.limit(limit - 4);
+                buffer.position(start + 4);
+                buffer.putInt(id);
+                buffer.put(single ? (byte) 1 : (byte) 0);
+                buffer.putShort((short) 0);
+
+                sink.start(buffer);
+                data.bind(sink);
+
+                if (!sink.isValid()) {
+                    buffer.position(start);
+                    return false;
+                }
+
+                int end = buffer.position();
+                buffer.limit(limit);
+
+                buffer.putShort(start + 4 + 4 + 1, (short) sink.count);
+                buffer.putInt(end, 0);
+
+                // The length is written last, so a partial record is never read
+                buffer.putInt(start, end - start - 4);
+                return true;
+            } catch (BufferOverflowException e) {
+                buffer.position(start);
+
+                if (start == JournalSegment.HEADER) {
+                    // Not even an empty segment holds the record
+                    return false;
+                }
+            } catch (RuntimeException e) {
+                buffer.position(start);
+                return false;
+            } finally {
+                buffer.limit(limit);
+            }
+        }
+
+        return false;
+    }
+
+    private boolean ensureCapacity(int size) {
+        if (active >= 0 && segments[active].getBuffer().remaining() >= size) {
+            return true;
+        }
+
+        int start = active < 0 ? 0 : active + 1;
+
+        for (int i = 0; i < segments.length; i++) {
+            int next = (start + i) % segments.length;
+
+            if (next != active && segments[next].outstanding == 0) {
+                if (active >= 0 && syncInterval >= 0) {
+                    segments[active].sync();
+                }
+
+                activate(next);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void activate(int index) {
+        segments[index].activate(++sequence);
+        active = index;
+    }
+
+    /**
+     * Releases committed records.
+     *
+     * @param segment The segment the records were appended to
+     * @param count   The number of records
+     */
+    void release(int segment, int count) {
+        JournalSegment released = segments[segment];
+        released.outstanding -= count;
+
+        if (released.outstanding == 0) {
+            released.truncate();
+        }
+    }
+
+    /**
+     * Syncs the segments if the sync interval elapsed.
+     *
+     * @param now The current time in milliseconds
+     */
+    void sync(long now) {
+        if (syncInterval < 0 || now - lastSync < syncInterval) {
+            return;
+        }
+
+        sync();
+        lastSync = now;
+    }
+
+    /**
+     * Syncs every modified segment to disk.
+     */
+    public void sync() {
+        for (JournalSegment segment : segments) {
+            segment.sync();
+        }
+    }
+
+    public int getSegments() {
+        return segments.length;
+    }
+
+    /**
+     * @return The number of data, which could not be journaled, because its values are not supported or
+     * every segment is in use
+     */
+    public long getUnjournaled() {
+        return unjournaled;
+    }
+
+    @Override
+    public boolean close() {
+        try {
+            for (JournalSegment segment : segments) {
+                segment.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to close the journal!", e);
+        }
+
+        return true;
+    }
+
+    private static int sizeOf(Object[] values) {
+        if (values.length > Short.MAX_VALUE) {
+            return -1;
+        }
+
+        int size = RECORD_HEADER;
+
+        for (Object value : values) {
+            int length = sizeOf(value);
+
+            if (length < 0) {
+                return -1;
+            }
+
+            size += 1 + length;
+        }
+
+        return size;
+    }
+
+    private static int sizeOf(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof String) {
+            return 4 + ((String) value).length() * 2;
+        } else if (value instanceof byte[]) {
+            return 4 + ((byte[]) value).length;
+        } else if (value instanceof Boolean || value instanceof Byte || value instanceof UByte) {
+            return 1;
+        } else if (value instanceof Short || value instanceof UShort) {
+            return 2;
+        } else if (value instanceof Integer || value instanceof Float || value instanceof UInteger) {
+            return 4;
+        } else if (value instanceof Long || value instanceof Double || value instanceof ULong
+                || value instanceof java.sql.Date || value instanceof DateTime) {
+            return 8;
+        } else if (value instanceof Timestamp) {
+            return 8 + 4;
+        } else if (value instanceof UUID) {
+            return 16;
+        }
+
+        return -1;
+    }
+
+    private static void write(ByteBuffer buffer, Object value) {
+        if (value == null) {
+            buffer.put(NULL);
+        } else if (value instanceof String) {
+            String string = (String) value;
+            int length = string.length();
+
+            buffer.put(STRING);
+            buffer.putInt(length);
+
+            for (int i = 0; i < length; i++) {
+                buffer.putChar(string.charAt(i));
+            }
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            buffer.put(BYTES);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        } else if (value instanceof Boolean) {
+            buffer.put(BOOLEAN);
+            buffer.put((Boolean) value ? (byte) 1 : (byte) 0);
+        } else if (value instanceof Byte) {
+            buffer.put(BYTE);
+            buffer.put((Byte) value);
+        } else if (value instanceof UByte) {
+            buffer.put(UBYTE);
+            buffer.put(((UByte) value).byteValue());
+        } else if (value instanceof Short) {
+            buffer.put(SHORT);
+            buffer.putShort((Short) value);
+        } else if (value instanceof UShort) {
+            buffer.put(USHORT);
+            buffer.putShort(((UShort) value).shortValue());
+        } else if (value instanceof Integer) {
+            buffer.put(INTEGER);
+            buffer.putInt((Integer) value);
+        } else if (value instanceof UInteger) {
+            buffer.put(UINTEGER);
+            buffer.putInt(((UInteger) value).intValue());
+        } else if (value instanceof Float) {
+            buffer.put(FLOAT);
+            buffer.putFloat((Float) value);
+        } else if (value instanceof Long) {
+            buffer.put(LONG);
+            buffer.putLong((Long) value);
+        } else if (value instanceof ULong) {
+            buffer.put(ULONG);
+            buffer.putLong(((ULong) value).longValue());
+        } else if (value instanceof Double) {
+            buffer.put(DOUBLE);
+            buffer.putDouble((Double) value);
+        } else if (value instanceof Timestamp) {
+            Timestamp timestamp = (Timestamp) value;
+            buffer.put(TIMESTAMP);
+            buffer.putLong(timestamp.getTime());
+            buffer.putInt(timestamp.getNanos());
+        } else if (value instanceof java.sql.Date) {
+            buffer.put(DATE);
+            buffer.putLong(((java.sql.Date) value).getTime());
+        } else if (value instanceof DateTime) {
+            buffer.put(DATE_TIME);
+            buffer.putLong(((DateTime) value).getMillis());
+        } else if (value instanceof UUID) {
+            UUID uuid = (UUID) value;
+            buffer.put(UUID_TYPE);
+            buffer.putLong(uuid.getMostSignificantBits());
+            buffer.putLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    private static Recovered read(ByteBuffer buffer, int origin) {
+        int id = buffer.getInt();
+        boolean single = buffer.get() != 0;
+        Object[] values = new Object[buffer.getShort()];
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readValue(buffer);
+        }
+
+        return new Recovered(id, single, values, origin);
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        byte type = buffer.get();
+
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                char[] chars = new char[buffer.getInt()];
+                for (int i = 0; i < chars.length; i++) {
+                    chars[i] = buffer.getChar();
+                }
+                return new String(chars);
+            case BYTES:
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                return bytes;
+            case BOOLEAN:
+                return buffer.get() != 0;
+            case BYTE:
+                return buffer.get();
+            case UBYTE:
+                return UByte.valueOf(buffer.get());
+            case SHORT:
+                return buffer.getShort();
+            case USHORT:
+                return UShort.valueOf(buffer.getShort());
+            case INTEGER:
+                return buffer.getInt();
+            case UINTEGER:
+                return UInteger.valueOf(buffer.getInt());
+            case FLOAT:
+                return buffer.getFloat();
+            case LONG:
+                return buffer.getLong();
+            case ULONG:
+                return ULong.valueOf(buffer.getLong());
+            case DOUBLE:
+                return buffer.getDouble();
+            case TIMESTAMP:
+                Timestamp timestamp = new Timestamp(buffer.getLong());
+                timestamp.setNanos(buffer.getInt());
+                return timestamp;
+            case DATE:
+                return new java.sql.Date(buffer.getLong());
+            case DATE_TIME:
+                return new DateTime(buffer.getLong());
+            case UUID_TYPE:
+                return new UUID(buffer.getLong(), buffer.getLong());
+            default:
+                throw new IllegalStateException("Unknown type " + type + " in the journal!");
+        }
+    }
+
+    /**
+     * @return The number of recovered data, which was not replayed yet
+     */
+    public int getRecovered() {
+        return recovered.size();
+    }
+
+    /**
+     * Writes bound values in the format of {@link #write(ByteBuffer, Object)}
+     */
+    private static final class JournalSink implements BindSink {
+
+        private ByteBuffer buffer;
+        private int count;
+        private boolean valid;
+
+        void start(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.count = 0;
+            this.valid = true;
+        }
+
+        boolean isValid() {
+            return valid && count <= Short.MAX_VALUE;
+        }
+
+        @Override
+        public void setLong(long value) {
+            buffer.put(LONG);
+            buffer.putLong(value);
+            count++;
+        }
+
+        @Override
+        public void setInt(int value) {
+            buffer.put(INTEGER);
+            buffer.putInt(value);
+            count++;
+        }
+
+        @Override
+        public void setDouble(double value) {
+            buffer.put(DOUBLE);
+            buffer.putDouble(value);
+            count++;
+        }
+
+        @Override
+        public void setUUID(UUID value) {
+            setObject(value);
+        }
+
+        @Override
+        public void setBytes(byte[] value) {
+            setObject(value);
+        }
+
+        @Override
+        public void setString(String value) {
+            setObject(value);
+        }
+
+        @Override
+        public void setNull() {
+            buffer.put(NULL);
+            count++;
+        }
+
+        @Override
+        public void setObject(Object value) {
+            if (sizeOf(value) < 0) {
+                valid = false;
+                return;
+            }
+
+            write(buffer, value);
+            count++;
+        }
+    }
+
+    private static final class Registration {
+        private final QueryKey key;
+        private final QueryProvider provider;
+
+        private Registration(QueryKey key, QueryProvider provider) {
+            this.key = key;
+            this.provider = provider;
+        }
+    }
+
+    private static final class Recovered {
+        private final int id;
+        private final boolean single;
+        private final Object[] values;
+        private final int origin;
+
+        private Recovered(int id, boolean single, Object[] values, int origin) {
+            this.id = id;
+            this.single = single;
+            this.values = values;
+            this.origin = origin;
+        }
+    }
+}
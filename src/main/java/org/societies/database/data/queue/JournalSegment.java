@@ -0,0 +1,101 @@
+package org.societies.database.data.queue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Represents one memory-mapped file of a {@link Journal}.
+ * <p>
+ * A segment starts with a header of a magic number and its sequence, followed by records. Every record is prefixed
+ * by its length and the records end with a length of zero.
+ */
+final class JournalSegment {
+
+    public static final int MAGIC = 0x534A524E;
+    public static final int HEADER = 4 + 8;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+
+    /** The sequence of this segment, the higher the newer */
+    private long sequence = -1;
+
+    /** The records in this segment, which are not committed yet */
+    int outstanding;
+
+    boolean dirty;
+
+    JournalSegment(File path, int size) throws IOException {
+        this.file = new RandomAccessFile(path, "rw");
+
+        if (file.length() != size) {
+            file.setLength(size);
+        }
+
+        this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * Reads the header of this segment.
+     *
+     * @return Whether this segment holds records of an earlier run
+     */
+    public boolean load() {
+        if (buffer.getInt(0) != MAGIC) {
+            return false;
+        }
+
+        sequence = buffer.getLong(4);
+        buffer.position(HEADER);
+        return true;
+    }
+
+    /**
+     * Truncates this segment and prepares it for new records.
+     *
+     * @param sequence The new sequence
+     */
+    public void activate(long sequence) {
+        this.sequence = sequence;
+
+        buffer.putInt(HEADER, 0);
+        buffer.putLong(4, sequence);
+        buffer.putInt(0, MAGIC);
+        buffer.position(HEADER);
+
+        outstanding = 0;
+        dirty = true;
+    }
+
+    /**
+     * Drops every record of this segment, once all of them are committed.
+     */
+    public void truncate() {
+        buffer.putInt(HEADER, 0);
+        buffer.position(HEADER);
+        dirty = true;
+    }
+
+    public MappedByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void sync() {
+        if (dirty) {
+            buffer.force();
+            dirty = false;
+        }
+    }
+
+    public void close() throws IOException {
+        sync();
+        file.close();
+    }
+}
@@ -0,0 +1,41 @@
+package org.societies.database.data.queue;
+
+import org.societies.database.QueryKey;
+import org.societies.database.QueryProvider;
+
+/**
+ * Represents data, which was recovered from a {@link Journal}
+ */
+final class JournaledData implements Data {
+
+    private final QueryProvider provider;
+    private final QueryKey key;
+    private final Object[] values;
+
+    /** The segment this data was recovered from, -1 once it was journaled again */
+    int origin;
+    final boolean single;
+
+    JournaledData(QueryProvider provider, QueryKey key, Object[] values, int origin, boolean single) {
+        this.provider = provider;
+        this.key = key;
+        this.values = values;
+        this.origin = origin;
+        this.single = single;
+    }
+
+    @Override
+    public QueryProvider getQueryProvider() {
+        return provider;
+    }
+
+    @Override
+    public QueryKey getQueryKey() {
+        return key;
+    }
+
+    @Override
+    public Object[] execute() {
+        return values;
+    }
+}
@@ -0,0 +1,31 @@
+package org.societies.database.data.queue;
+
+/**
+ * Represents a lane of pending entries, lanes are scheduled from {@link #HIGH} to {@link #LOW}
+ */
+public enum Lane {
+    /**
+     * Urgent writes, for example single writes a player waits for
+     */
+    HIGH,
+    /**
+     * The lane of every key and data without a priority
+     */
+    NORMAL,
+    /**
+     * Bulk writes, which may be delayed
+     */
+    LOW;
+
+    /**
+     * @param priority The priority of data
+     * @return The lane of the priority or null if it is the {@link PrioritizedData#DEFAULT_PRIORITY default}
+     */
+    static Lane of(int priority) {
+        if (priority > PrioritizedData.DEFAULT_PRIORITY) {
+            return HIGH;
+        }
+
+        return priority < PrioritizedData.DEFAULT_PRIORITY ? LOW : null;
+    }
+}
@@ -0,0 +1,123 @@
+package org.societies.database.data.queue;
+
+/**
+ * Represents the pending entries of a queue, split into {@link Lane lanes}.
+ * <p>
+ * Lanes are polled by weighted round robin. Every lane may hand out as many entries as its weight, higher lanes
+ * first, and the weights are restored once every non-empty lane used them up. So urgent entries overtake bulk
+ * entries, but a busy higher lane never starves a lower one. In strict mode a lower lane is only polled if every
+ * higher lane is empty.
+ */
+final class Lanes {
+
+    /** The default weights of the lanes, by ordinal */
+    static final int[] DEFAULT_WEIGHTS = {8, 4, 1};
+
+    private static final Lane[] LANES = Lane.values();
+
+    private final RingBuffer<Entry>[] lanes;
+    private final int[] weights = DEFAULT_WEIGHTS.clone();
+    private final int[] credits = DEFAULT_WEIGHTS.clone();
+    private boolean strict;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    Lanes() {
+        lanes = new RingBuffer[LANES.length];
+
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new RingBuffer<Entry>();
+        }
+    }
+
+    /**
+     * Sets the number of entries each lane may hand out per round.
+     *
+     * @param weights The weights by the ordinal of the lanes
+     */
+    void setWeights(int... weights) {
+        if (weights.length != LANES.length) {
+            throw new IllegalArgumentException("Every lane needs a weight!");
+        }
+
+        for (int weight : weights) {
+            if (weight < 1) {
+                throw new IllegalArgumentException("The weights of the lanes must be positive!");
+            }
+        }
+
+        System.arraycopy(weights, 0, this.weights, 0, weights.length);
+        System.arraycopy(weights, 0, credits, 0, weights.length);
+    }
+
+    void setStrict(boolean strict) {
+        this.strict = strict;
+    }
+
+    public void offer(Entry entry, Lane lane) {
+        lanes[lane.ordinal()].offer(entry);
+        size++;
+    }
+
+    public void addFirst(Entry entry, Lane lane) {
+        lanes[lane.ordinal()].addFirst(entry);
+        size++;
+    }
+
+    public Entry poll() {
+        if (size == 0) {
+            return null;
+        }
+
+        while (true) {
+            for (int i = 0; i < lanes.length; i++) {
+                RingBuffer<Entry> lane = lanes[i];
+
+                if (lane.isEmpty()) {
+                    continue;
+                }
+
+                if (strict || credits[i] > 0) {
+                    if (!strict) {
+                        credits[i]--;
+                    }
+
+                    size--;
+                    return lane.poll();
+                }
+            }
+
+            // Every non-empty lane used up its weight, the next round starts
+            System.arraycopy(weights, 0, credits, 0, weights.length);
+        }
+    }
+
+    /**
+     * Removes an entry from its lane.
+     *
+     * @param entry The entry
+     * @return Whether the entry was pending
+     */
+    public boolean remove(Entry entry) {
+        for (RingBuffer<Entry> lane : lanes) {
+            if (lane.remove(entry)) {
+                size--;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int size(Lane lane) {
+        return lanes[lane.ordinal()].size();
+    }
+}
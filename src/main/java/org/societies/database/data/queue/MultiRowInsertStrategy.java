@@ -0,0 +1,79 @@
+package org.societies.database.data.queue;
+
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.societies.database.BindBuffer;
+import org.societies.database.CachedQuery;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Represents a BatchStrategy, which rewrites inserts to a single statement with several rows of values.
+ * Other queries and dialects without support for several rows of values fall back to JDBC batches.
+ */
+public final class MultiRowInsertStrategy implements BufferedBatchStrategy {
+
+    private static final EnumSet<SQLDialect> SUPPORTED = EnumSet.of(
+            SQLDialect.MYSQL, SQLDialect.MARIADB, SQLDialect.POSTGRES,
+            SQLDialect.H2, SQLDialect.HSQLDB, SQLDialect.SQLITE
+    );
+
+    private final int maxParameters;
+
+    /**
+     * @param maxParameters The maximum number of bind parameters of a single statement
+     */
+    @Inject
+    public MultiRowInsertStrategy(@Named("multi-row-max-parameters") int maxParameters) {
+        if (maxParameters < 1) {
+            throw new IllegalArgumentException("The maximum number of parameters must be positive!");
+        }
+
+        this.maxParameters = maxParameters;
+    }
+
+    @Override
+    public void execute(DSLContext context, CachedQuery query, List<Object[]> rows) {
+        if (rows.size() < 2 || !query.isMultiRowInsert() || !isSupported(context)) {
+            JdbcBatchStrategy.INSTANCE.execute(context, query, rows);
+            return;
+        }
+
+        int chunk = Math.max(1, maxParameters / Math.max(1, query.getParameterCount()));
+
+        for (int start = 0; start < rows.size(); start += chunk) {
+            List<Object[]> part = rows.subList(start, Math.min(rows.size(), start + chunk));
+
+            if (part.size() == 1) {
+                query.execute(context, part.get(0));
+            } else {
+                query.executeMultiRow(context, part);
+            }
+        }
+    }
+
+    @Override
+    public void execute(DSLContext context, CachedQuery query, BindBuffer buffer) {
+        if (buffer.getRows() < 2 || !query.isMultiRowInsert() || !isSupported(context)) {
+            JdbcBatchStrategy.INSTANCE.execute(context, query, buffer);
+            return;
+        }
+
+        int chunk = Math.max(1, maxParameters / Math.max(1, query.getParameterCount()));
+
+        for (int start = 0; start < buffer.getRows(); start += chunk) {
+            query.executeMultiRow(context, buffer, start, Math.min(buffer.getRows(), start + chunk));
+        }
+    }
+
+    private static boolean isSupported(DSLContext context) {
+        return SUPPORTED.contains(context.configuration().dialect().family());
+    }
+
+    public int getMaxParameters() {
+        return maxParameters;
+    }
+}
@@ -0,0 +1,10 @@
+package org.societies.database.data.queue;
+
+/**
+ * Represents a Data which is routed by its own partition key instead of its {@link org.societies.database.QueryKey}.
+ * Data with equal partition keys always end up in the same shard and keep their order.
+ */
+public interface PartitionedData extends Data {
+
+    Object getPartitionKey();
+}
@@ -0,0 +1,12 @@
+package org.societies.database.data.queue;
+
+/**
+ * Represents a Data with a priority, higher values are more important.
+ * Data which does not implement this interface has the priority {@link #DEFAULT_PRIORITY}.
+ */
+public interface PrioritizedData extends Data {
+
+    int DEFAULT_PRIORITY = 0;
+
+    int getPriority();
+}
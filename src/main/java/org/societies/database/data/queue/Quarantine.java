@@ -0,0 +1,110 @@
+package org.societies.database.data.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents a dead-letter store of data, which failed to execute too often.
+ * The oldest data is discarded once the maximum size is reached.
+ */
+public final class Quarantine {
+
+    private final ConcurrentLinkedQueue<QuarantinedData> entries = new ConcurrentLinkedQueue<QuarantinedData>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger discarded = new AtomicInteger();
+    private final int maxSize;
+
+    public Quarantine() {
+        this(10000);
+    }
+
+    public Quarantine(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    void add(Data data, boolean single, DataException cause) {
+        entries.offer(new QuarantinedData(data, single, cause, System.currentTimeMillis()));
+
+        if (size.incrementAndGet() > maxSize && entries.poll() != null) {
+            size.decrementAndGet();
+            discarded.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return A snapshot of the quarantined data
+     */
+    public List<QuarantinedData> getEntries() {
+        return new ArrayList<QuarantinedData>(entries);
+    }
+
+    /**
+     * Removes all quarantined data, to inspect or {@link org.societies.database.data.DataWorker#replay(Quarantine)
+     * replay} it.
+     *
+     * @return The removed data
+     */
+    public List<QuarantinedData> drain() {
+        ArrayList<QuarantinedData> drained = new ArrayList<QuarantinedData>();
+        QuarantinedData data;
+
+        while ((data = entries.poll()) != null) {
+            size.decrementAndGet();
+            drained.add(data);
+        }
+
+        return drained;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return The number of quarantined data, which was discarded because the quarantine was full
+     */
+    public int getDiscarded() {
+        return discarded.get();
+    }
+
+    /**
+     * Represents data in the quarantine
+     */
+    public static final class QuarantinedData {
+        private final Data data;
+        private final boolean single;
+        private final DataException cause;
+        private final long time;
+
+        private QuarantinedData(Data data, boolean single, DataException cause, long time) {
+            this.data = data;
+            this.single = single;
+            this.cause = cause;
+            this.time = time;
+        }
+
+        public Data getData() {
+            return data;
+        }
+
+        /**
+         * @return Whether the data was published to be executed on its own
+         */
+        public boolean isSingle() {
+            return single;
+        }
+
+        public DataException getCause() {
+            return cause;
+        }
+
+        /**
+         * @return The time the data was quarantined in milliseconds
+         */
+        public long getTime() {
+            return time;
+        }
+    }
+}
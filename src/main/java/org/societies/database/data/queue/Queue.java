@@ -7,6 +7,12 @@ import org.jooq.DSLContext;
  */
 public interface Queue {
 
+    /**
+     * Called by the worker thread once, before it uses the queue.
+     * The queue is configured before, it is only used by the worker thread afterwards.
+     */
+    void start();
+
     void execute(DSLContext context) throws DataException;
 
     void publishBatch(Data data);
@@ -20,4 +26,20 @@ public interface Queue {
     void flushAll();
 
     boolean isFlushPending();
+
+    /**
+     * @return The time in milliseconds at which the next batch has to be flushed or {@link Long#MAX_VALUE} if
+     * nothing is buffered
+     */
+    long getNextDeadline();
+
+    /**
+     * @return Whether nothing is buffered, pending or waiting for a retry
+     */
+    boolean isEmpty();
+
+    /**
+     * @return The capacity, which limits the data published to this queue
+     */
+    Capacity getCapacity();
 }
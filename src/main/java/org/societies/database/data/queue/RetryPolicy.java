@@ -0,0 +1,93 @@
+package org.societies.database.data.queue;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents the policy of retrying failed entries with exponential backoff and jitter.
+ * <p>
+ * Transient failures, like a lost connection or a deadlock, affect every key and pause the whole queue.
+ * Other failures only back off the failing key and quarantine its entry after the maximum number of attempts.
+ */
+public final class RetryPolicy {
+
+    /** Backs off from 100 milliseconds to 30 seconds and quarantines an entry after 5 failed attempts */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(100, 30000, 5, TimeUnit.MILLISECONDS);
+
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final int maxAttempts;
+
+    private final Random random = new Random();
+
+    /**
+     * @param initialBackoff The backoff after the first failure
+     * @param maxBackoff     The maximum backoff
+     * @param maxAttempts    The number of failed attempts after which an entry is quarantined, 0 to retry forever
+     * @param unit           The unit of the backoffs
+     */
+    @Inject
+    public RetryPolicy(@Named("retry-initial-backoff") long initialBackoff,
+                       @Named("retry-max-backoff") long maxBackoff,
+                       @Named("retry-max-attempts") int maxAttempts,
+                       @Named("queue-time-unit") TimeUnit unit) {
+        if (initialBackoff < 1 || maxBackoff < initialBackoff || maxAttempts < 0) {
+            throw new IllegalArgumentException("Invalid retry policy!");
+        }
+
+        this.initialBackoff = unit.toMillis(initialBackoff);
+        this.maxBackoff = unit.toMillis(maxBackoff);
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @param attempt The number of failed attempts
+     * @return The backoff in milliseconds, at least half of the exponential backoff and at most all of it
+     */
+    public long getBackoff(int attempt) {
+        long backoff = initialBackoff << Math.min(Math.max(attempt - 1, 0), 30);
+
+        if (backoff <= 0 || backoff > maxBackoff) {
+            backoff = maxBackoff;
+        }
+
+        long half = backoff >> 1;
+        return half + (long) (random.nextDouble() * (backoff - half + 1));
+    }
+
+    /**
+     * @param attempts The number of failed attempts
+     * @return Whether the entry should be quarantined
+     */
+    public boolean isExhausted(int attempts) {
+        return maxAttempts > 0 && attempts >= maxAttempts;
+    }
+
+    /**
+     * @param e The failure
+     * @return Whether the failure is caused by the database in general and not by specific data
+     */
+    public static boolean isTransient(Throwable e) {
+        for (int depth = 0; e != null && depth < 16; depth++, e = e.getCause()) {
+            if (e instanceof SQLTransientException || e instanceof SQLRecoverableException) {
+                return true;
+            }
+
+            if (e instanceof SQLException) {
+                String state = ((SQLException) e).getSQLState();
+
+                // Connection exceptions and transaction rollbacks, like deadlocks
+                if (state != null && (state.startsWith("08") || state.startsWith("40"))) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+}
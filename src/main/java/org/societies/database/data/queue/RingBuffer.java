@@ -0,0 +1,153 @@
+package org.societies.database.data.queue;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Represents a growable ring buffer backed by an array.
+ * <p>
+ * Unlike a linked list it does not allocate a node per element and keeps its capacity after it was drained, so a
+ * buffer, which is filled and drained every flush cycle, stops allocating once it reached its working size.
+ */
+final class RingBuffer<E> {
+
+    private Object[] elements;
+    private int head;
+    private int size;
+
+    RingBuffer() {
+        this(16);
+    }
+
+    RingBuffer(int capacity) {
+        elements = new Object[Integer.highestOneBit(Math.max(2, capacity - 1)) << 1];
+    }
+
+    public void offer(E element) {
+        if (size == elements.length) {
+            grow();
+        }
+
+        elements[(head + size) & (elements.length - 1)] = element;
+        size++;
+    }
+
+    public void addFirst(E element) {
+        if (size == elements.length) {
+            grow();
+        }
+
+        head = (head - 1) & (elements.length - 1);
+        elements[head] = element;
+        size++;
+    }
+
+    /**
+     * Inserts elements in front of the buffer, keeping their order.
+     *
+     * @param elements The elements
+     */
+    public void addAllFirst(List<? extends E> elements) {
+        for (int i = elements.size() - 1; i >= 0; i--) {
+            addFirst(elements.get(i));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        if (size == 0) {
+            return null;
+        }
+
+        E element = (E) elements[head];
+        elements[head] = null;
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return element;
+    }
+
+    /**
+     * @param index The index from the head of the buffer
+     * @return The element at the index, which has to be less than the size
+     */
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        return (E) elements[(head + index) & (elements.length - 1)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        return size == 0 ? null : (E) elements[head];
+    }
+
+    /**
+     * Moves every element into a list, in order.
+     *
+     * @param target The list
+     * @return The number of moved elements
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(List<? super E> target) {
+        int drained = size;
+        int mask = elements.length - 1;
+
+        for (int i = 0; i < drained; i++) {
+            int index = (head + i) & mask;
+            target.add((E) elements[index]);
+            elements[index] = null;
+        }
+
+        head = 0;
+        size = 0;
+        return drained;
+    }
+
+    /**
+     * Removes the first occurrence of an element.
+     *
+     * @param element The element
+     * @return Whether the element was found
+     */
+    public boolean remove(Object element) {
+        int mask = elements.length - 1;
+
+        for (int i = 0; i < size; i++) {
+            if (elements[(head + i) & mask] == element) {
+                // Close the gap by moving the following elements forward
+                for (int j = i; j < size - 1; j++) {
+                    elements[(head + j) & mask] = elements[(head + j + 1) & mask];
+                }
+
+                elements[(head + size - 1) & mask] = null;
+                size--;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return elements.length;
+    }
+
+    private void grow() {
+        Object[] grown = new Object[elements.length << 1];
+        int first = elements.length - head;
+
+        System.arraycopy(elements, head, grown, 0, first);
+        System.arraycopy(elements, 0, grown, first, head);
+
+        Arrays.fill(elements, null);
+        elements = grown;
+        head = 0;
+    }
+}
@@ -1,21 +1,40 @@
 package org.societies.database.data.queue;
 
 import org.jooq.DSLContext;
-import org.jooq.Query;
 import org.societies.database.QueryKey;
 import org.societies.database.QueryProvider;
 
+import java.util.Collections;
+
 /**
  * Represents a SingleEntry
  */
 public class SingleEntry implements Entry {
 
     private final Data data;
+    private final DataListener listener;
+    private final long enqueued = System.nanoTime();
+
+    /** The journal segment of the data or -1 if it was not journaled */
+    int segment = -1;
 
-    public SingleEntry(Data data) {this.data = data;}
+    public SingleEntry(Data data) {
+        this(data, DataListener.NONE);
+    }
+
+    public SingleEntry(Data data, DataListener listener) {
+        this.data = data;
+        this.listener = listener;
+    }
 
     @Override
     public void execute(DSLContext context) throws DataException {
+        prepare(context);
+        commit();
+    }
+
+    @Override
+    public void prepare(DSLContext context) throws DataException {
 
         Object[] obj;
 
@@ -28,13 +47,59 @@ public class SingleEntry implements Entry {
         QueryKey key = data.getQueryKey();
         QueryProvider provider = data.getQueryProvider();
 
-        Query query = provider.getQuery(key);
+        try {
+            provider.getCachedQuery(key).execute(context, obj);
+        } catch (RuntimeException e) {
+            throw new DataException(e);
+        }
+    }
+
+    @Override
+    public void commit() {
+        listener.committed(Collections.singletonList(data));
+    }
 
-        for (int i = 0; i < obj.length; i++) {
-            query.bind(i, obj);
+    @Override
+    public void isolate(DSLContext context) {
+        try {
+            prepare(context);
+        } catch (DataException e) {
+            listener.quarantined(data, true, e);
+            return;
         }
 
-        query.execute();
+        commit();
+    }
+
+    @Override
+    public void rollback() {
+        // The data stays in this entry
+    }
+
+    @Override
+    public int size() {
+        return 1;
+    }
+
+    @Override
+    public QueryKey getQueryKey() {
+        return data.getQueryKey();
+    }
+
+    public Data getData() {
+        return data;
+    }
+
+    @Override
+    public long getEnqueued() {
+        return enqueued;
+    }
+
+    void releaseJournal(Journal journal) {
+        if (segment >= 0) {
+            journal.release(segment, 1);
+            segment = -1;
+        }
     }
 
     @Override
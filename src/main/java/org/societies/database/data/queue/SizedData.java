@@ -0,0 +1,13 @@
+package org.societies.database.data.queue;
+
+/**
+ * Represents a Data which knows its approximate footprint in memory.
+ * The estimate must not change while the data is queued.
+ */
+public interface SizedData extends Data {
+
+    /**
+     * @return The estimated size in bytes
+     */
+    int getEstimatedSize();
+}
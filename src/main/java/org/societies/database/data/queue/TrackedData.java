@@ -0,0 +1,86 @@
+package org.societies.database.data.queue;
+
+import org.societies.database.QueryKey;
+import org.societies.database.QueryProvider;
+
+/**
+ * Represents published data, which reports its outcome to a {@link DataCallback}.
+ * <p>
+ * Keeps the coalescing key, size, priority and partition key of the wrapped data, so it is queued like the data itself.
+ */
+public final class TrackedData implements CoalescingData, SizedData, PrioritizedData, PartitionedData {
+
+    private final Data data;
+    private final DataCallback callback;
+
+    /** Tracked data of the same coalescing key, which was replaced by this one */
+    private TrackedData superseded;
+
+    public TrackedData(Data data, DataCallback callback) {
+        this.data = data;
+        this.callback = callback;
+    }
+
+    public Data getData() {
+        return data;
+    }
+
+    void supersede(TrackedData replaced) {
+        // The replaced data may have superseded other data already, its chain is kept
+        TrackedData tail = replaced;
+
+        while (tail.superseded != null) {
+            tail = tail.superseded;
+        }
+
+        tail.superseded = superseded;
+        superseded = replaced;
+    }
+
+    void committed() {
+        for (TrackedData tracked = this; tracked != null; tracked = tracked.superseded) {
+            tracked.callback.committed(tracked.data);
+        }
+    }
+
+    void failed(DataException e) {
+        for (TrackedData tracked = this; tracked != null; tracked = tracked.superseded) {
+            tracked.callback.failed(tracked.data, e);
+        }
+    }
+
+    @Override
+    public QueryProvider getQueryProvider() {
+        return data.getQueryProvider();
+    }
+
+    @Override
+    public QueryKey getQueryKey() {
+        return data.getQueryKey();
+    }
+
+    @Override
+    public Object[] execute() {
+        return data.execute();
+    }
+
+    @Override
+    public Object getCoalescingKey() {
+        return data instanceof CoalescingData ? ((CoalescingData) data).getCoalescingKey() : null;
+    }
+
+    @Override
+    public int getEstimatedSize() {
+        return data instanceof SizedData ? ((SizedData) data).getEstimatedSize() : Capacity.DEFAULT_DATA_SIZE;
+    }
+
+    @Override
+    public int getPriority() {
+        return data instanceof PrioritizedData ? ((PrioritizedData) data).getPriority() : DEFAULT_PRIORITY;
+    }
+
+    @Override
+    public Object getPartitionKey() {
+        return data instanceof PartitionedData ? ((PartitionedData) data).getPartitionKey() : data.getQueryKey();
+    }
+}
@@ -0,0 +1,150 @@
+package org.societies.database;
+
+
+import com.zaxxer.hikari.HikariConfig;
+import org.jooq.SQLDialect;
+import org.jooq.tools.jdbc.MockConnection;
+import org.jooq.tools.jdbc.MockDataProvider;
+import org.jooq.tools.jdbc.MockExecuteContext;
+import org.jooq.tools.jdbc.MockResult;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Represents a PoolProfileTest
+ */
+@RunWith(JUnit4.class)
+public class PoolProfileTest {
+
+    @Test
+    public void testApply() {
+        PoolProfile profile = new PoolProfile(0, 2, 3, 10, 5, TimeUnit.SECONDS, true, true);
+        HikariConfig config = new HikariConfig();
+
+        profile.apply(config);
+        profile.applyDriverProperties(config, SQLDialect.MYSQL);
+
+        int size = Runtime.getRuntime().availableProcessors() * 2 + 3;
+
+        Assert.assertEquals(size, config.getMaximumPoolSize());
+        Assert.assertEquals(2, config.getMinimumIdle());
+        Assert.assertEquals(TimeUnit.SECONDS.toMillis(10), config.getMaxLifetime());
+        Assert.assertEquals(TimeUnit.SECONDS.toMillis(5), config.getConnectionTimeout());
+        Assert.assertTrue(config.isRegisterMbeans());
+        Assert.assertEquals(true, config.getDataSourceProperties().get("rewriteBatchedStatements"));
+
+        config = new HikariConfig();
+        PoolProfile.DEFAULT.apply(config);
+        PoolProfile.DEFAULT.applyDriverProperties(config, SQLDialect.MYSQL);
+
+        Assert.assertEquals(AbstractDatabase.MAX_CONNECTIONS, config.getMaximumPoolSize());
+        Assert.assertEquals(AbstractDatabase.MAX_CONNECTIONS, config.getMinimumIdle());
+        Assert.assertTrue(config.getDataSourceProperties().isEmpty());
+    }
+
+    @Test
+    public void testPoolStats() {
+        MockDatabase database = new MockDatabase();
+        database.setPoolProfile(new PoolProfile(2, 1, 0, 30, 5, TimeUnit.SECONDS, true, false));
+
+        // The statistics are not available before the pool exists
+        Assert.assertEquals(-1, database.getActiveConnections());
+        Assert.assertEquals(-1, database.getTotalConnections());
+
+        database.initDatabase();
+
+        try {
+            Assert.assertEquals(0, database.getActiveConnections());
+            Assert.assertTrue(database.getTotalConnections() >= 1);
+            Assert.assertTrue(database.getIdleConnections() >= 1);
+            Assert.assertEquals(0, database.getWaitingThreads());
+        } finally {
+            database.close();
+        }
+
+        Assert.assertEquals(-1, database.getIdleConnections());
+        Assert.assertEquals(-1, database.getWaitingThreads());
+    }
+
+    /**
+     * A database, which pools mocked connections
+     */
+    private static final class MockDatabase extends AbstractDatabase {
+
+        private MockDatabase() {
+            super(null, SQLDialect.MYSQL);
+        }
+
+        @Override
+        public HikariConfig createConfig() {
+            HikariConfig config = new HikariConfig();
+            getPoolProfile().apply(config);
+            config.setDataSource(new MockDataSource());
+            return config;
+        }
+    }
+
+    private static final class MockDataSource implements javax.sql.DataSource {
+
+        @Override
+        public Connection getConnection() {
+            return new MockConnection(new MockDataProvider() {
+                @Override
+                public MockResult[] execute(MockExecuteContext ctx) {
+                    return new MockResult[0];
+                }
+            }) {
+                @Override
+                public boolean isValid(int timeout) {
+                    return true;
+                }
+            };
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) {
+            return getConnection();
+        }
+
+        @Override
+        public PrintWriter getLogWriter() {
+            return null;
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) {
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) {
+        }
+
+        @Override
+        public int getLoginTimeout() {
+            return 0;
+        }
+
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            throw new SQLException("Not a wrapper");
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package org.societies.database;
+
+
+import org.jooq.DSLContext;
+import org.jooq.ExecuteContext;
+import org.jooq.Field;
+import org.jooq.Query;
+import org.jooq.Record1;
+import org.jooq.Result;
+import org.jooq.Select;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultExecuteListener;
+import org.jooq.impl.DefaultExecuteListenerProvider;
+import org.jooq.impl.SQLDataType;
+import org.jooq.tools.jdbc.MockDataProvider;
+import org.jooq.tools.jdbc.MockExecuteContext;
+import org.jooq.tools.jdbc.MockResult;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.societies.database.data.queue.MultiRowInsertStrategy;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.jooq.impl.DSL.fieldByName;
+import static org.jooq.impl.DSL.tableByName;
+
+/**
+ * Represents a QueryProviderTest
+ */
+@RunWith(JUnit4.class)
+public class QueryProviderTest {
+
+    private final List<String> executed = new ArrayList<String>();
+    private final List<Object[]> bindings = new ArrayList<Object[]>();
+    private int fetched;
+    private int rows = 1;
+    private volatile long delay;
+
+    private static final Field<String> NAME = fieldByName(String.class, "name");
+
+    private DSLContext dslContext = DatabaseMock.mockedDSLContext(new MockDataProvider() {
+        @Override
+        public MockResult[] execute(MockExecuteContext ctx) throws SQLException {
+            if (ctx.sql().startsWith("select")) {
+                fetched++;
+
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    throw new SQLException(e);
+                }
+
+                Result<Record1<String>> result = dslContext.newResult(NAME);
+
+                for (int i = 0; i < rows; i++) {
+                    Record1<String> record = dslContext.newRecord(NAME);
+                    record.setValue(NAME, "name" + ctx.bindings()[0]);
+                    result.add(record);
+                }
+                return new MockResult[]{new MockResult(1, result)};
+            }
+
+            for (Object[] batch : ctx.batchBindings()) {
+                if (executed.size() < 10) {
+                    executed.add(ctx.sql());
+                    bindings.add(batch);
+                }
+            }
+            return new MockResult[]{new MockResult(1, null)};
+        }
+    });
+
+    private final QueryKey<Query> TEST_KEY = new QueryKey<Query>();
+    private final QueryKey<Query> INSERT_KEY = new QueryKey<Query>();
+    private final QueryKey<Select<Record1<String>>> SELECT_KEY = new QueryKey<Select<Record1<String>>>();
+
+    private final QueryProvider provider = new QueryProvider(new DSLProvider() {
+        @Override
+        public DSLContext getDSLContext() {
+            return dslContext;
+        }
+    }) {
+        @Override
+        public void build() {
+            builder(TEST_KEY, new QueryBuilder<Query>() {
+                @Override
+                public Query create(DSLContext context) {
+                    return context
+                            .insertInto(tableByName("societies"),
+                                    fieldByName(SQLDataType.BINARY.asConvertedDataType(new UUIDConverter()), "uuid"),
+                                    fieldByName(String.class, "name"),
+                                    fieldByName(String.class, "tag"))
+                            .values(DEFAULT_UUID, DEFAULT_STRING, DEFAULT_STRING)
+                            .onDuplicateKeyUpdate()
+                            .set(fieldByName(String.class, "name"), DEFAULT_STRING);
+                }
+            });
+
+            builder(INSERT_KEY, new QueryBuilder<Query>() {
+                @Override
+                public Query create(DSLContext context) {
+                    return context
+                            .insertInto(tableByName("members"),
+                                    fieldByName(String.class, "name"),
+                                    fieldByName(Integer.class, "rank"))
+                            .values(DEFAULT_STRING, 0);
+                }
+            });
+
+            builder(SELECT_KEY, new QueryBuilder<Select<Record1<String>>>() {
+                @Override
+                public Select<Record1<String>> create(DSLContext context) {
+                    return context.select(NAME)
+                            .from(tableByName("members"))
+                            .where(fieldByName(Integer.class, "rank").eq(0));
+                }
+            });
+        }
+    };
+
+    @Test
+    public void testCachedQuery() {
+        CachedQuery cached = provider.getCachedQuery(TEST_KEY);
+
+        Assert.assertSame(cached, provider.getCachedQuery(TEST_KEY));
+        Assert.assertEquals(dslContext.render(provider.getQuery(TEST_KEY)), cached.getSQL());
+        Assert.assertEquals(4, cached.getParameterCount());
+
+        UUID uuid = UUID.randomUUID();
+        cached.execute(dslContext, new Object[]{uuid, "name", "tag", "name"});
+
+        Assert.assertEquals(cached.getSQL(), executed.get(0));
+        Assert.assertArrayEquals(new UUIDConverter().to(uuid), (byte[]) bindings.get(0)[0]);
+        Assert.assertEquals("tag", bindings.get(0)[2]);
+    }
+
+    @Test
+    public void testMultiRowInsert() {
+        Assert.assertFalse(provider.getCachedQuery(TEST_KEY).isMultiRowInsert());
+
+        CachedQuery cached = provider.getCachedQuery(INSERT_KEY);
+        Assert.assertTrue(cached.isMultiRowInsert());
+
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < 5; i++) {
+            rows.add(new Object[]{"name" + i, i});
+        }
+
+        // Four parameters fit two rows per statement
+        new MultiRowInsertStrategy(4).execute(dslContext, cached, rows);
+
+        Assert.assertEquals(3, executed.size());
+        Assert.assertEquals(cached.getSQL() + ", (?, ?)", executed.get(0));
+        Assert.assertEquals(cached.getSQL(), executed.get(2));
+        Assert.assertArrayEquals(new Object[]{"name0", 0, "name1", 1}, bindings.get(0));
+        Assert.assertArrayEquals(new Object[]{"name4", 4}, bindings.get(2));
+    }
+
+    @Test
+    public void testBindBuffer() {
+        CachedQuery cached = provider.getCachedQuery(TEST_KEY);
+        BindBuffer buffer = new BindBuffer(cached.getParameterCount(), 2, true);
+
+        UUID uuid = UUID.randomUUID();
+
+        for (int i = 0; i < 3; i++) {
+            buffer.nextRow();
+            buffer.setUUID(uuid);
+            buffer.setString("name" + i);
+        }
+
+        buffer.addRow(new Object[]{uuid, "name", null, "other"});
+
+        cached.execute(dslContext, buffer);
+
+        // The buffer grew and the missing values were bound to their defaults
+        Assert.assertEquals(4, buffer.getCapacity());
+        Assert.assertEquals(4, bindings.size());
+        Assert.assertArrayEquals(new UUIDConverter().to(uuid), (byte[]) bindings.get(2)[0]);
+        Assert.assertEquals("name2", bindings.get(2)[1]);
+        Assert.assertArrayEquals(new Object[]{"name", null, "other"},
+                new Object[]{bindings.get(3)[1], bindings.get(3)[2], bindings.get(3)[3]});
+
+        buffer.clear();
+        bindings.clear();
+        executed.clear();
+
+        cached = provider.getCachedQuery(INSERT_KEY);
+        buffer = new BindBuffer(cached.getParameterCount(), false);
+
+        for (int i = 0; i < 3; i++) {
+            buffer.nextRow();
+            buffer.setString("name" + i);
+            buffer.setInt(i);
+        }
+
+        new MultiRowInsertStrategy(4).execute(dslContext, cached, buffer);
+
+        Assert.assertEquals(2, executed.size());
+        Assert.assertArrayEquals(new Object[]{"name0", 0, "name1", 1}, bindings.get(0));
+        Assert.assertArrayEquals(new Object[]{"name2", 2}, bindings.get(1));
+    }
+
+    @Test
+    public void testSelectListeners() {
+        final int[] lifecycle = new int[2];
+
+        dslContext = DSL.using(dslContext.configuration().derive(new DefaultExecuteListenerProvider(
+                new DefaultExecuteListener() {
+                    @Override
+                    public void start(ExecuteContext ctx) {
+                        lifecycle[0]++;
+                    }
+
+                    @Override
+                    public void end(ExecuteContext ctx) {
+                        lifecycle[1]++;
+                    }
+                })));
+
+        Result<Record1<String>> result = provider.query(SELECT_KEY, 7);
+
+        Assert.assertEquals("name7", result.get(0).value1());
+        Assert.assertEquals(1, fetched);
+
+        // Listeners see the read once it is finished
+        Assert.assertEquals(1, lifecycle[0]);
+        Assert.assertEquals(lifecycle[0], lifecycle[1]);
+    }
+
+    @Test
+    public void testResultCache() {
+        ResultCache resultCache = new ResultCache(100);
+        resultCache.cache(SELECT_KEY, 1, TimeUnit.MINUTES, tableByName("MEMBERS"));
+        provider.setResultCache(resultCache);
+
+        Assert.assertEquals("name1", provider.query(SELECT_KEY, 1).get(0).value1());
+        Assert.assertEquals("name1", provider.query(SELECT_KEY, 1).get(0).value1());
+        Assert.assertEquals("name2", provider.query(SELECT_KEY, 2).get(0).value1());
+
+        Assert.assertEquals(2, fetched);
+        Assert.assertEquals(1, resultCache.getHits());
+        Assert.assertEquals(2, resultCache.getMisses());
+
+        // Readers get their own copies
+        Result<Record1<String>> result = provider.query(SELECT_KEY, 1);
+        result.get(0).setValue(NAME, "changed");
+        result.clear();
+
+        Assert.assertEquals("name1", provider.query(SELECT_KEY, 1).get(0).value1());
+
+        // The insert invalidates the table it writes to, without registering it
+        provider.invalidate(TEST_KEY);
+        provider.query(SELECT_KEY, 1);
+
+        Assert.assertEquals(2, fetched);
+
+        provider.invalidate(INSERT_KEY);
+        provider.query(SELECT_KEY, 1);
+
+        Assert.assertEquals(3, fetched);
+    }
+
+    @Test
+    public void testFindTable() {
+        Assert.assertEquals("members", provider.getCachedQuery(INSERT_KEY).getTable());
+        Assert.assertNull(provider.getCachedQuery(SELECT_KEY).getTable());
+
+        Assert.assertEquals("members", CachedQuery.findTable("INSERT IGNORE INTO members VALUES (?)"));
+        Assert.assertEquals("members", CachedQuery.findTable("replace into `db`.`members` values (?)"));
+        Assert.assertEquals("mem\"bers", CachedQuery.findTable(" update \"mem\"\"bers\" set name = ?"));
+        Assert.assertEquals("members", CachedQuery.findTable("DELETE LOW_PRIORITY FROM [members] WHERE rank = ?"));
+        Assert.assertNull(CachedQuery.findTable("SELECT 1"));
+    }
+
+    @Test
+    public void testStream() {
+        rows = 5;
+
+        RecordStream<Record1<String>> stream = provider.stream(SELECT_KEY, QueryProvider.STREAMING, 1);
+        int streamed = 0;
+
+        for (Record1<String> record : stream) {
+            Assert.assertEquals("name1", record.value1());
+            streamed++;
+        }
+
+        Assert.assertEquals(5, streamed);
+        Assert.assertTrue(stream.isClosed());
+
+        // The visitor stops the stream early
+        int visited = provider.stream(SELECT_KEY, 100, new RecordVisitor<Record1<String>>() {
+            @Override
+            public boolean visit(Record1<String> record) {
+                return false;
+            }
+        }, 2);
+
+        Assert.assertEquals(1, visited);
+    }
+
+    @Test
+    public void testQueryAsync() throws Exception {
+        ReadExecutor readExecutor = new ReadExecutor(2, 10, 0, TimeUnit.MILLISECONDS);
+        provider.setReadExecutor(readExecutor);
+
+        try {
+            Assert.assertEquals("name3", provider.queryAsync(SELECT_KEY, 3).get(5, TimeUnit.SECONDS).get(0).value1());
+
+            delay = 5000;
+            readExecutor.setTimeout(SELECT_KEY, 50, TimeUnit.MILLISECONDS);
+
+            try {
+                provider.queryAsync(SELECT_KEY, 4).get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof TimeoutException);
+            }
+        } finally {
+            readExecutor.close();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.societies.database;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Represents a ReadExecutorTest
+ */
+@RunWith(JUnit4.class)
+public class ReadExecutorTest {
+
+    @Test
+    public void testTimeoutReleasesPending() throws Exception {
+        ReadExecutor executor = new ReadExecutor(1, 4, 0, TimeUnit.MILLISECONDS);
+        final CountDownLatch blocked = new CountDownLatch(1);
+
+        QueryFuture<String> running = executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                blocked.await();
+                return "done";
+            }
+        }, 0);
+
+        QueryFuture[] waiting = new QueryFuture[3];
+
+        for (int i = 0; i < waiting.length; i++) {
+            waiting[i] = executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return "waited";
+                }
+            }, 20);
+        }
+
+        // The waiting reads time out before they ever start
+        for (QueryFuture future : waiting) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof TimeoutException);
+            }
+        }
+
+        blocked.countDown();
+        Assert.assertEquals("done", running.get(5, TimeUnit.SECONDS));
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (executor.getPending() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        Assert.assertEquals(0, executor.getPending());
+        Assert.assertTrue(executor.close());
+    }
+}
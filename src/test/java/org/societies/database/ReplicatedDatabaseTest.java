@@ -0,0 +1,139 @@
+package org.societies.database;
+
+import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.jooq.Record1;
+import org.jooq.Result;
+import org.jooq.Select;
+import org.jooq.tools.jdbc.MockDataProvider;
+import org.jooq.tools.jdbc.MockExecuteContext;
+import org.jooq.tools.jdbc.MockResult;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.jooq.impl.DSL.fieldByName;
+import static org.jooq.impl.DSL.tableByName;
+
+/**
+ * Represents a ReplicatedDatabaseTest
+ */
+@RunWith(JUnit4.class)
+public class ReplicatedDatabaseTest {
+
+    private final QueryKey<Select<Record1<String>>> SELECT_KEY = new QueryKey<Select<Record1<String>>>();
+    private final QueryKey<Query> UPDATE_KEY = new QueryKey<Query>();
+
+    private final MockDatabase primary = new MockDatabase();
+    private final MockDatabase first = new MockDatabase();
+    private final MockDatabase second = new MockDatabase();
+
+    private final ReplicatedDatabase database = new ReplicatedDatabase(primary, Arrays.<Database>asList(first, second),
+            ReplicatedDatabase.ReplicaSelection.ROUND_ROBIN, 1, 0, TimeUnit.SECONDS);
+
+    private final QueryProvider provider = new QueryProvider(database) {
+        @Override
+        public void build() {
+            builder(SELECT_KEY, new QueryBuilder<Select<Record1<String>>>() {
+                @Override
+                public Select<Record1<String>> create(DSLContext context) {
+                    return context.select(fieldByName(String.class, "name")).from(tableByName("members"));
+                }
+            });
+
+            builder(UPDATE_KEY, new QueryBuilder<Query>() {
+                @Override
+                public Query create(DSLContext context) {
+                    return context.query("UPDATE members SET name = ?", DEFAULT_STRING);
+                }
+            });
+        }
+    };
+
+    @Test
+    public void testRouting() {
+        database.initDatabase();
+
+        for (int i = 0; i < 4; i++) {
+            provider.query(SELECT_KEY);
+        }
+
+        provider.getQuery(UPDATE_KEY).execute();
+
+        Assert.assertEquals(1, primary.executed);
+        Assert.assertEquals(2, first.executed);
+        Assert.assertEquals(2, second.executed);
+
+        // Pinned reads see the writes of the primary
+        database.pinPrimary(1, TimeUnit.MINUTES);
+        provider.query(SELECT_KEY);
+        database.unpinPrimary();
+
+        Assert.assertEquals(2, primary.executed);
+
+        // The lagging replica stops serving reads
+        database.setLagProbe(new ReplicatedDatabase.LagProbe() {
+            private int replicas;
+
+            @Override
+            public long getLag(DSLContext replica) {
+                return replicas++ == 0 ? 5000 : 0;
+            }
+        });
+        database.updateLag();
+
+        Assert.assertEquals(1, database.getAvailableReplicas());
+
+        for (int i = 0; i < 2; i++) {
+            provider.query(SELECT_KEY);
+        }
+
+        Assert.assertEquals(2, first.executed);
+        Assert.assertEquals(4, second.executed);
+    }
+
+    private static class MockDatabase implements Database {
+
+        private int executed;
+        private DSLContext context;
+
+        @Override
+        public void initDatabase() {
+            context = DatabaseMock.mockedDSLContext(new MockDataProvider() {
+                @Override
+                public MockResult[] execute(MockExecuteContext ctx) {
+                    executed++;
+
+                    Result<Record1<String>> result = context.newResult(fieldByName(String.class, "name"));
+                    return new MockResult[]{new MockResult(0, result)};
+                }
+            });
+        }
+
+        @Override
+        public Connection getConnection() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public DataSource getDataSource() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean close() {
+            return true;
+        }
+
+        @Override
+        public DSLContext getDSLContext() {
+            return context;
+        }
+    }
+}
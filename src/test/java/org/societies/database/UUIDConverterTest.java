@@ -0,0 +1,77 @@
+package org.societies.database;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Represents a UUIDConverterTest
+ */
+@RunWith(JUnit4.class)
+public class UUIDConverterTest {
+
+    @Test
+    public void testSwappedLayout() {
+        UUID uuid = UUID.fromString("6ccd780c-baba-1026-9564-5b8c656024db");
+
+        // The example of UUID_TO_BIN(uuid, 1) in the MySQL manual
+        byte[] bytes = new byte[20];
+        UUIDConverter.SWAPPED.to(uuid, bytes, 4);
+        Assert.assertEquals("1026BABA6CCD780C95645B8C656024DB", hex(bytes, 4));
+        Assert.assertEquals(uuid, UUIDConverter.SWAPPED.from(bytes, 4));
+
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        UUIDConverter.SWAPPED.to(uuid, buffer);
+        buffer.flip();
+        Assert.assertEquals(uuid, UUIDConverter.SWAPPED.from(buffer));
+    }
+
+    @Test
+    public void testOrderedGeneration() {
+        byte[] last = UUIDConverter.PLAIN.to(UUIDConverter.generateOrdered());
+        byte[] lastTimeBased = UUIDConverter.SWAPPED.to(UUIDConverter.generateTimeBased());
+
+        for (int i = 0; i < 10000; i++) {
+            UUID ordered = UUIDConverter.generateOrdered();
+            UUID timeBased = UUIDConverter.generateTimeBased();
+
+            Assert.assertEquals(7, ordered.version());
+            Assert.assertEquals(1, timeBased.version());
+
+            byte[] bytes = UUIDConverter.PLAIN.to(ordered);
+            byte[] timeBasedBytes = UUIDConverter.SWAPPED.to(timeBased);
+
+            Assert.assertTrue(compare(last, bytes) < 0);
+            Assert.assertTrue(compare(lastTimeBased, timeBasedBytes) < 0);
+
+            last = bytes;
+            lastTimeBased = timeBasedBytes;
+        }
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length; i++) {
+            int difference = (a[i] & 0xff) - (b[i] & 0xff);
+
+            if (difference != 0) {
+                return difference;
+            }
+        }
+
+        return 0;
+    }
+
+    private static String hex(byte[] bytes, int offset) {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = offset; i < offset + UUIDConverter.UUID_LENGTH; i++) {
+            builder.append(String.format("%02X", bytes[i]));
+        }
+
+        return builder.toString();
+    }
+}
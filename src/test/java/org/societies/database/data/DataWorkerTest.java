@@ -15,7 +15,9 @@ import org.societies.database.DatabaseMock;
 import org.societies.database.QueryKey;
 import org.societies.database.QueryProvider;
 import org.societies.database.data.queue.Data;
+import org.societies.database.data.queue.DataFuture;
 import org.societies.database.data.queue.DefaultQueue;
+import org.societies.database.data.queue.RetryPolicy;
 
 import java.sql.SQLException;
 import java.util.concurrent.TimeUnit;
@@ -30,11 +32,21 @@ public class DataWorkerTest {
     public static final int TRIES = 1000;
 
     private AtomicInteger queries = new AtomicInteger();
+    private AtomicInteger outages = new AtomicInteger();
+    private AtomicInteger rejections = new AtomicInteger();
 
     private DSLContext dslContext = DatabaseMock.mockedDSLContext(new MockDataProvider() {
 
         @Override
         public MockResult[] execute(MockExecuteContext ctx) throws SQLException {
+            if (outages.getAndDecrement() > 0) {
+                throw new SQLException("Communication link failure", "08S01");
+            }
+
+            if (rejections.getAndDecrement() > 0) {
+                throw new SQLException("Data too long", "22001");
+            }
+
             queries.addAndGet(ctx.batchBindings().length);
             return new MockResult[0];
         }
@@ -47,82 +59,187 @@ public class DataWorkerTest {
         }
     };
 
+    private final QueryKey<Query> TEST_KEY = new QueryKey<Query>();
+
+    private final QueryProvider provider = new QueryProvider(dslProvider) {
+        @Override
+        public void build() {
+            builder(TEST_KEY, new QueryBuilder<Query>() {
+                @Override
+                public Query create(DSLContext context) {
+                    return dslContext.query("SELECT 1");
+                }
+            });
+        }
+    };
+
+    private final Data data = new Data() {
+
+        @Override
+        public QueryProvider getQueryProvider() {
+            return provider;
+        }
+
+        @Override
+        public QueryKey getQueryKey() {
+            return TEST_KEY;
+        }
+
+        @Override
+        public Object[] execute() {
+            return new Object[0];
+        }
+    };
+
+    private final Thread.UncaughtExceptionHandler failing = new Thread.UncaughtExceptionHandler() {
+        @Override
+        public void uncaughtException(Thread t, Throwable e) {
+            throw new AssertionError(e);
+        }
+    };
+
     @Test
     public void testQueues() {
         long start = System.nanoTime();
 
+        DataWorker controller = new DataWorker(failing, dslProvider, new DefaultQueue(5, 5, TimeUnit.MINUTES, 50));
+        start(controller);
+
+        for (int i = 0; i < TRIES; i++) {
+            controller.publishBatch(data);
+            controller.publishSingle(data);
+        }
+
+        try {
+            controller.stop();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+
+        long finish = System.nanoTime();
+        System.out.printf("Check took %s!%n", (double) (finish - start));
+
+        Assert.assertEquals(TRIES * 2, queries.get());
+    }
+
+    @Test
+    public void testIdleDeadline() throws InterruptedException {
+        DataWorker controller = new DataWorker(failing, dslProvider, new DefaultQueue(1000, 50, TimeUnit.MILLISECONDS, 50));
+        Thread thread = start(controller);
+
+        for (int i = 0; i < 3; i++) {
+            controller.publishBatch(data);
+        }
+
+        // No further data arrives, so only the deadline can flush the batch
+        long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+
+        while (queries.get() < 3 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertEquals(3, queries.get());
+
+        controller.stop();
+        thread.join();
+    }
+
+    @Test
+    public void testAcknowledgement() throws Exception {
+        DataWorker controller = new DataWorker(failing, dslProvider, new DefaultQueue(5, 5, TimeUnit.MINUTES, 50));
+        Thread thread = start(controller);
+
+        DataFuture batch = controller.submitBatch(data);
+        DataFuture single = controller.submitSingle(data);
+
+        Assert.assertSame(data, single.get(5, TimeUnit.SECONDS));
+        Assert.assertFalse(batch.isDone());
+
+        controller.flush();
+
+        Assert.assertSame(data, batch.get(5, TimeUnit.SECONDS));
+
+        controller.stop();
+        thread.join();
+    }
+
+    @Test
+    public void testStopDuringBackoff() throws Exception {
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50);
+        queue.setRetryPolicy(new RetryPolicy(50, 50, 0, TimeUnit.MILLISECONDS));
+
         DataWorker controller = new DataWorker(new Thread.UncaughtExceptionHandler() {
             @Override
             public void uncaughtException(Thread t, Throwable e) {
-                throw new AssertionError(e);
+                // The outage is expected
             }
-        }, dslProvider, new DefaultQueue(5, 5, TimeUnit.MINUTES, 50));
+        }, dslProvider, queue);
+        Thread thread = start(controller);
 
-        Thread thread = DataWorker.createDefaultThread(controller);
-        thread.start();
+        outages.set(3);
+
+        DataFuture future = controller.submitSingle(data);
 
-        final QueryKey<Query> TEST_KEY = new QueryKey<Query>();
+        // The entry backs off after every failure, stopping waits until it was committed
+        controller.stop();
+        thread.join(5000);
 
-        final QueryProvider provider = new QueryProvider(dslProvider) {
+        Assert.assertTrue(future.isDone());
+        Assert.assertEquals(1, queries.get());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testStopWithRejectedData() throws Exception {
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50);
+        DataWorker controller = new DataWorker(new Thread.UncaughtExceptionHandler() {
             @Override
-            public void build() {
-                builder(TEST_KEY, new QueryBuilder<Query>() {
-                    @Override
-                    public Query create(DSLContext context) {
-                        return dslContext.query("SELECT 1");
-                    }
-                });
+            public void uncaughtException(Thread t, Throwable e) {
+                // The rejection is expected
             }
-        };
+        }, dslProvider, queue);
+        Thread thread = start(controller);
 
-        for (int i = 0; i < TRIES; i++) {
+        rejections.set(Integer.MAX_VALUE);
 
-            controller.publishBatch(new Data() {
+        DataFuture future = controller.submitSingle(data);
 
-                @Override
-                public QueryProvider getQueryProvider() {
-                    return provider;
-                }
+        // The default policy quarantines the data once its attempts are exhausted
+        Assert.assertTrue(controller.stop(10, TimeUnit.SECONDS));
+        thread.join(5000);
 
-                @Override
-                public QueryKey getQueryKey() {
-                    return TEST_KEY;
-                }
-
-                @Override
-                public Object[] execute() {
-                    return new Object[0];
-                }
-            });
-
-            controller.publishSingle(new Data() {
+        Assert.assertTrue(future.isDone());
+        Assert.assertEquals(1, queue.getQuarantine().size());
+        Assert.assertTrue(queue.isEmpty());
+    }
 
-                @Override
-                public QueryProvider getQueryProvider() {
-                    return provider;
-                }
+    @Test
+    public void testStopTimeout() throws Exception {
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50);
+        queue.setRetryPolicy(new RetryPolicy(50, 50, 0, TimeUnit.MILLISECONDS));
 
-                @Override
-                public QueryKey getQueryKey() {
-                    return TEST_KEY;
-                }
+        DataWorker controller = new DataWorker(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                // The outage is expected
+            }
+        }, dslProvider, queue);
+        Thread thread = start(controller);
 
-                @Override
-                public Object[] execute() {
-                    return new Object[0];
-                }
-            });
-        }
+        outages.set(Integer.MAX_VALUE);
+        controller.publishSingle(data);
 
-        try {
-            controller.stop();
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        // The database never comes back, so the worker stops without draining the queue
+        Assert.assertFalse(controller.stop(200, TimeUnit.MILLISECONDS));
+        thread.join(5000);
 
-        long finish = System.nanoTime();
-        System.out.printf("Check took %s!%n", (double) (finish - start));
+        Assert.assertFalse(thread.isAlive());
+        Assert.assertFalse(queue.isEmpty());
+    }
 
-        Assert.assertEquals(TRIES * 2, queries.get());
+    private static Thread start(DataWorker controller) {
+        Thread thread = DataWorker.createDefaultThread(controller);
+        thread.start();
+        return thread;
     }
 }
@@ -0,0 +1,186 @@
+package org.societies.database.data;
+
+
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Query;
+import org.jooq.Record1;
+import org.jooq.Result;
+import org.jooq.Select;
+import org.jooq.impl.SQLDataType;
+import org.jooq.tools.jdbc.MockDataProvider;
+import org.jooq.tools.jdbc.MockExecuteContext;
+import org.jooq.tools.jdbc.MockResult;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.societies.database.DSLProvider;
+import org.societies.database.DatabaseMock;
+import org.societies.database.QueryKey;
+import org.societies.database.QueryProvider;
+import org.societies.database.UUIDConverter;
+import org.societies.database.data.queue.Data;
+import org.societies.database.data.queue.DataCallback;
+import org.societies.database.data.queue.DataFuture;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.jooq.impl.DSL.fieldByName;
+import static org.jooq.impl.DSL.tableByName;
+
+/**
+ * Represents a EntityCacheTest
+ */
+@RunWith(JUnit4.class)
+public class EntityCacheTest {
+
+    private static final Field<String> NAME = fieldByName(String.class, "name");
+    private static final Field<UUID> UUID_FIELD = fieldByName(SQLDataType.BINARY.asConvertedDataType(new UUIDConverter()), "uuid");
+
+    private int fetched;
+
+    private final List<Data> published = new ArrayList<Data>();
+    private final List<DataCallback> callbacks = new ArrayList<DataCallback>();
+
+    private DSLContext dslContext = DatabaseMock.mockedDSLContext(new MockDataProvider() {
+        @Override
+        public MockResult[] execute(MockExecuteContext ctx) throws SQLException {
+            fetched++;
+
+            Result<Record1<String>> result = dslContext.newResult(NAME);
+            Record1<String> record = dslContext.newRecord(NAME);
+            record.setValue(NAME, "loaded");
+            result.add(record);
+            return new MockResult[]{new MockResult(1, result)};
+        }
+    });
+
+    private final QueryKey<Select<Record1<String>>> LOAD_KEY = new QueryKey<Select<Record1<String>>>();
+    private final QueryKey<Query> STORE_KEY = new QueryKey<Query>();
+
+    private final QueryProvider provider = new QueryProvider(new DSLProvider() {
+        @Override
+        public DSLContext getDSLContext() {
+            return dslContext;
+        }
+    }) {
+        @Override
+        public void build() {
+            builder(LOAD_KEY, new QueryBuilder<Select<Record1<String>>>() {
+                @Override
+                public Select<Record1<String>> create(DSLContext context) {
+                    return context.select(NAME).from(tableByName("members")).where(UUID_FIELD.eq(DEFAULT_UUID));
+                }
+            });
+
+            builder(STORE_KEY, new QueryBuilder<Query>() {
+                @Override
+                public Query create(DSLContext context) {
+                    return context.insertInto(tableByName("members"), UUID_FIELD, NAME)
+                            .values(DEFAULT_UUID, DEFAULT_STRING)
+                            .onDuplicateKeyUpdate()
+                            .set(NAME, DEFAULT_STRING);
+                }
+            });
+        }
+    };
+
+    private final DataPublisher publisher = new DataPublisher() {
+        @Override
+        public void publishBatch(Data data) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void publishSingle(Data data) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void publishBatch(Data data, DataCallback callback) {
+            published.add(data);
+            callbacks.add(callback);
+        }
+
+        @Override
+        public void publishSingle(Data data, DataCallback callback) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public DataFuture submitBatch(Data data) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public DataFuture submitSingle(Data data) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void stop() {
+        }
+    };
+
+    private final EntityAdapter<Record1<String>, String> adapter = new EntityAdapter<Record1<String>, String>() {
+        @Override
+        public String read(Record1<String> record) {
+            return record.value1();
+        }
+
+        @Override
+        public Object[] write(UUID uuid, String entity) {
+            return new Object[]{uuid, entity, entity};
+        }
+    };
+
+    @Test
+    public void testWriteBehind() throws InterruptedException {
+        EntityCache<Record1<String>, String> cache = new EntityCache<Record1<String>, String>(publisher, provider,
+                LOAD_KEY, STORE_KEY, adapter, 100, 1, 0, TimeUnit.MILLISECONDS);
+
+        UUID uuid = UUID.randomUUID();
+
+        Assert.assertEquals("loaded", cache.get(uuid));
+        Assert.assertEquals("loaded", cache.get(uuid));
+        Assert.assertEquals(1, fetched);
+        Assert.assertEquals(1, cache.getHits());
+
+        // Clean entities are never written
+        cache.flush();
+        Assert.assertTrue(published.isEmpty());
+
+        cache.put(uuid, "changed");
+        cache.flush();
+        cache.flush();
+
+        Assert.assertEquals(1, published.size());
+        Assert.assertArrayEquals(new Object[]{uuid, "changed", "changed"}, published.get(0).execute());
+        Assert.assertSame(STORE_KEY, published.get(0).getQueryKey());
+
+        cache.modified(uuid);
+        Thread.sleep(2);
+        cache.evictExpired();
+
+        // The dirty entity was written back before it was evicted and is served until the write back committed
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(2, published.size());
+        Assert.assertEquals("changed", cache.get(uuid));
+        Assert.assertEquals(1, fetched);
+
+        cache.invalidate(uuid);
+
+        for (DataCallback callback : callbacks) {
+            callback.committed(null);
+        }
+
+        Assert.assertEquals("loaded", cache.get(uuid));
+        Assert.assertEquals(2, fetched);
+        Assert.assertTrue(cache.close());
+    }
+}
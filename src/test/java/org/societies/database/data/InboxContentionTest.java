@@ -0,0 +1,185 @@
+package org.societies.database.data;
+
+
+import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.jooq.tools.jdbc.MockDataProvider;
+import org.jooq.tools.jdbc.MockExecuteContext;
+import org.jooq.tools.jdbc.MockResult;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.societies.database.DSLProvider;
+import org.societies.database.DatabaseMock;
+import org.societies.database.QueryKey;
+import org.societies.database.QueryProvider;
+import org.societies.database.data.queue.Data;
+import org.societies.database.data.queue.DefaultQueue;
+
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Checks that neither the {@link MpscInbox} nor the {@link DataWorker} lose or duplicate submissions of many
+ * producers. The timings of the handoff are measured by the InboxBenchmark of the benchmarks.
+ */
+@RunWith(JUnit4.class)
+public class InboxContentionTest {
+
+    public static final int PRODUCERS = 8;
+    public static final int TRIES = 20000;
+
+    private final AtomicIntegerArray executed = new AtomicIntegerArray(PRODUCERS * TRIES);
+
+    private DSLContext dslContext = DatabaseMock.mockedDSLContext(new MockDataProvider() {
+
+        @Override
+        public MockResult[] execute(MockExecuteContext ctx) throws SQLException {
+            for (Object[] bindings : ctx.batchBindings()) {
+                executed.incrementAndGet((Integer) bindings[0]);
+            }
+
+            return new MockResult[0];
+        }
+    });
+
+    private DSLProvider dslProvider = new DSLProvider() {
+        @Override
+        public DSLContext getDSLContext() {
+            return dslContext;
+        }
+    };
+
+    private final QueryKey<Query> TEST_KEY = new QueryKey<Query>();
+
+    private final QueryProvider provider = new QueryProvider(dslProvider) {
+        @Override
+        public void build() {
+            builder(TEST_KEY, new QueryBuilder<Query>() {
+                @Override
+                public Query create(DSLContext context) {
+                    return context.query("INSERT INTO members VALUES (?)", 0);
+                }
+            });
+        }
+    };
+
+    @Test
+    public void testInbox() throws InterruptedException {
+        final Inbox inbox = new MpscInbox();
+
+        publish(new Producer() {
+            @Override
+            public void publish(Data data) {
+                inbox.offer(new Submission(Submission.BATCH, data, null));
+            }
+        });
+
+        // Each producer polls its own submissions in the order they were offered
+        int[] last = new int[PRODUCERS];
+        int polled = 0;
+        Submission submission;
+
+        while ((submission = inbox.poll()) != null) {
+            int value = (Integer) submission.data.execute()[0];
+            int producer = value / TRIES;
+
+            Assert.assertEquals(last[producer]++, value % TRIES);
+            polled++;
+        }
+
+        Assert.assertEquals(PRODUCERS * TRIES, polled);
+        Assert.assertTrue(inbox.isEmpty());
+    }
+
+    @Test
+    public void testWorker() throws InterruptedException {
+        final DataWorker worker = new DataWorker(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                throw new AssertionError(e);
+            }
+        }, dslProvider, new DefaultQueue(5, 5, TimeUnit.MINUTES, 50), new MpscInbox());
+
+        Thread thread = DataWorker.createDefaultThread(worker);
+        thread.start();
+
+        publish(new Producer() {
+            @Override
+            public void publish(Data data) {
+                worker.publishBatch(data);
+            }
+        });
+
+        worker.stop();
+        thread.join();
+
+        for (int i = 0; i < executed.length(); i++) {
+            Assert.assertEquals("Submission " + i, 1, executed.get(i));
+        }
+    }
+
+    /**
+     * Publishes distinct data from every producer at once and waits for the producers to finish.
+     */
+    private void publish(final Producer producer) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(PRODUCERS);
+
+        for (int i = 0; i < PRODUCERS; i++) {
+            final int offset = i * TRIES;
+
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+
+                    for (int j = 0; j < TRIES; j++) {
+                        producer.publish(new TestData(offset + j));
+                    }
+
+                    finished.countDown();
+                }
+            }).start();
+        }
+
+        start.countDown();
+        Assert.assertTrue(finished.await(1, TimeUnit.MINUTES));
+    }
+
+    private interface Producer {
+
+        void publish(Data data);
+    }
+
+    private final class TestData implements Data {
+
+        private final Object[] values;
+
+        private TestData(int value) {
+            this.values = new Object[]{value};
+        }
+
+        @Override
+        public QueryProvider getQueryProvider() {
+            return provider;
+        }
+
+        @Override
+        public QueryKey getQueryKey() {
+            return TEST_KEY;
+        }
+
+        @Override
+        public Object[] execute() {
+            return values;
+        }
+    }
+}
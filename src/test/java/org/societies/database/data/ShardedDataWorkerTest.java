@@ -0,0 +1,134 @@
+package org.societies.database.data;
+
+
+import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.jooq.tools.jdbc.MockDataProvider;
+import org.jooq.tools.jdbc.MockExecuteContext;
+import org.jooq.tools.jdbc.MockResult;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.societies.database.DSLProvider;
+import org.societies.database.DatabaseMock;
+import org.societies.database.QueryKey;
+import org.societies.database.QueryProvider;
+import org.societies.database.data.queue.DefaultQueue;
+import org.societies.database.data.queue.PartitionedData;
+import org.societies.database.data.queue.Queue;
+
+import javax.inject.Provider;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents a ShardedDataWorkerTest
+ */
+@RunWith(JUnit4.class)
+public class ShardedDataWorkerTest {
+
+    public static final int TRIES = 1000;
+    public static final int PARTITIONS = 16;
+
+    private DSLContext dslContext = DatabaseMock.mockedDSLContext(new MockDataProvider() {
+
+        @Override
+        public MockResult[] execute(MockExecuteContext ctx) throws SQLException {
+            return new MockResult[0];
+        }
+    });
+
+    private DSLProvider dslProvider = new DSLProvider() {
+        @Override
+        public DSLContext getDSLContext() {
+            return dslContext;
+        }
+    };
+
+    @Test
+    public void testPartitionOrder() throws InterruptedException {
+        ShardedDataWorker worker = new ShardedDataWorker(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                throw new AssertionError(e);
+            }
+        }, dslProvider, new Provider<Queue>() {
+            @Override
+            public Queue get() {
+                return new DefaultQueue(5, 5, TimeUnit.MINUTES, 50);
+            }
+        }, 4);
+
+        worker.start();
+
+        final QueryKey<Query> TEST_KEY = new QueryKey<Query>();
+
+        final QueryProvider provider = new QueryProvider(dslProvider) {
+            @Override
+            public void build() {
+                builder(TEST_KEY, new QueryBuilder<Query>() {
+                    @Override
+                    public Query create(DSLContext context) {
+                        return dslContext.query("SELECT 1");
+                    }
+                });
+            }
+        };
+
+        final List<List<Integer>> executed = new ArrayList<List<Integer>>();
+
+        for (int i = 0; i < PARTITIONS; i++) {
+            executed.add(new ArrayList<Integer>());
+        }
+
+        for (int i = 0; i < TRIES; i++) {
+            final int partition = i % PARTITIONS;
+            final int sequence = i;
+
+            worker.publishBatch(new PartitionedData() {
+
+                @Override
+                public Object getPartitionKey() {
+                    return partition;
+                }
+
+                @Override
+                public QueryProvider getQueryProvider() {
+                    return provider;
+                }
+
+                @Override
+                public QueryKey getQueryKey() {
+                    return TEST_KEY;
+                }
+
+                @Override
+                public Object[] execute() {
+                    List<Integer> sequences = executed.get(partition);
+
+                    synchronized (sequences) {
+                        sequences.add(sequence);
+                    }
+                    return new Object[0];
+                }
+            });
+        }
+
+        worker.stop();
+
+        int total = 0;
+
+        for (List<Integer> sequences : executed) {
+            for (int i = 1; i < sequences.size(); i++) {
+                Assert.assertTrue(sequences.get(i - 1) < sequences.get(i));
+            }
+
+            total += sequences.size();
+        }
+
+        Assert.assertEquals(TRIES, total);
+    }
+}
@@ -0,0 +1,43 @@
+package org.societies.database.data.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Represents a HistogramTest
+ */
+@RunWith(JUnit4.class)
+public class HistogramTest {
+
+    @Test
+    public void testBuckets() {
+        long[] values = {0, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE};
+
+        for (long value : values) {
+            int index = Histogram.indexOf(value);
+
+            Assert.assertTrue(Histogram.highestOf(index) >= value);
+            Assert.assertTrue(index == 0 || Histogram.highestOf(index - 1) < value);
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(1000, histogram.getMax());
+        Assert.assertEquals(500.5, histogram.getMean(), 0.001);
+
+        // Within the precision of the buckets
+        Assert.assertEquals(500, histogram.getValueAtPercentile(50), 500 / Histogram.SUB_BUCKETS);
+        Assert.assertEquals(990, histogram.getValueAtPercentile(99), 990 / Histogram.SUB_BUCKETS);
+        Assert.assertEquals(1000, histogram.getValueAtPercentile(100));
+    }
+}
@@ -0,0 +1,176 @@
+package org.societies.database.data.queue;
+
+
+import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.societies.database.DSLProvider;
+import org.societies.database.DatabaseMock;
+import org.societies.database.QueryKey;
+import org.societies.database.QueryProvider;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents a CapacityTest
+ */
+@RunWith(JUnit4.class)
+public class CapacityTest {
+
+    public static final int PRODUCERS = 8;
+    public static final int TRIES = 100000;
+
+    private DSLContext dslContext = DatabaseMock.mockedDSLContext();
+
+    private final QueryKey<Query> TEST_KEY = new QueryKey<Query>();
+
+    private final QueryProvider provider = new QueryProvider(new DSLProvider() {
+        @Override
+        public DSLContext getDSLContext() {
+            return dslContext;
+        }
+    }) {
+        @Override
+        public void build() {
+            builder(TEST_KEY, new QueryBuilder<Query>() {
+                @Override
+                public Query create(DSLContext context) {
+                    return context.query("SELECT 1");
+                }
+            });
+        }
+    };
+
+    private final Data data = new Data() {
+
+        @Override
+        public QueryProvider getQueryProvider() {
+            return provider;
+        }
+
+        @Override
+        public QueryKey getQueryKey() {
+            return TEST_KEY;
+        }
+
+        @Override
+        public Object[] execute() {
+            return new Object[0];
+        }
+    };
+
+    @Test(expected = DataException.class)
+    public void testFail() {
+        Capacity capacity = new Capacity(0, 0, 2, 0, BackpressurePolicy.FAIL, 0, TimeUnit.MILLISECONDS, 0);
+
+        Assert.assertTrue(capacity.acquire(data));
+        Assert.assertTrue(capacity.acquire(data));
+        Assert.assertEquals(2, capacity.getEntries(TEST_KEY));
+
+        capacity.acquire(data);
+    }
+
+    @Test
+    public void testDropOldest() {
+        Capacity capacity = new Capacity(3, 0, 0, 0, BackpressurePolicy.DROP_OLDEST, 0, TimeUnit.MILLISECONDS, 0);
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50, capacity);
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(capacity.acquire(data));
+            queue.publishBatch(data);
+        }
+
+        Assert.assertEquals(3, capacity.getEntries());
+        Assert.assertEquals(2, capacity.getDropped());
+
+        queue.flushAll();
+        queue.execute(dslContext);
+
+        Assert.assertEquals(0, capacity.getEntries());
+        Assert.assertEquals(0, capacity.getBytes());
+    }
+
+    @Test
+    public void testDropOldestSingle() {
+        Capacity capacity = new Capacity(2, 0, 0, 0, BackpressurePolicy.DROP_OLDEST, 0, TimeUnit.MILLISECONDS, 0);
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50, capacity);
+
+        for (int i = 0; i < 2; i++) {
+            Assert.assertTrue(capacity.acquire(data));
+            queue.publishBatch(data);
+        }
+
+        // Single data drops buffered batch data
+        Assert.assertTrue(capacity.acquire(data));
+        queue.publishSingle(data);
+
+        Assert.assertEquals(2, capacity.getEntries());
+        Assert.assertEquals(1, capacity.getDropped());
+
+        // Single data is never dropped, so without batch data the limit is exceeded
+        for (int i = 0; i < 2; i++) {
+            Assert.assertTrue(capacity.acquire(data));
+            queue.publishSingle(data);
+        }
+
+        Assert.assertEquals(3, capacity.getEntries());
+        Assert.assertEquals(2, capacity.getDropped());
+
+        queue.execute(dslContext);
+
+        Assert.assertEquals(0, capacity.getEntries());
+    }
+
+    @Test
+    public void testShedByPriority() {
+        Capacity capacity = new Capacity(1, 0, 0, 0, BackpressurePolicy.SHED_BY_PRIORITY, 0, TimeUnit.MILLISECONDS, 1);
+
+        Assert.assertTrue(capacity.acquire(data));
+        Assert.assertFalse(capacity.acquire(data));
+        Assert.assertEquals(1, capacity.getDropped());
+        Assert.assertEquals(1f, capacity.getUtilization(), 0f);
+    }
+
+    @Test
+    public void testConcurrentReservations() throws InterruptedException {
+        final Capacity capacity = new Capacity(4, 0, 0, 0, BackpressurePolicy.FAIL, 0, TimeUnit.MILLISECONDS, 0);
+        final CountDownLatch finished = new CountDownLatch(PRODUCERS);
+        final AtomicInteger reserved = new AtomicInteger();
+
+        for (int i = 0; i < PRODUCERS; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < TRIES; j++) {
+                        try {
+                            capacity.acquire(data);
+                        } catch (DataException e) {
+                            continue;
+                        }
+
+                        reserved.incrementAndGet();
+                        capacity.release(data);
+                    }
+
+                    finished.countDown();
+                }
+            }).start();
+        }
+
+        // A reservation never exceeds the limit, not even while it is checked
+        int max = 0;
+
+        while (finished.getCount() > 0) {
+            max = Math.max(max, capacity.getEntries());
+        }
+
+        Assert.assertTrue("Exceeded the limit with " + max + " entries", max <= 4);
+        Assert.assertTrue(reserved.get() > 0);
+        Assert.assertEquals(0, capacity.getEntries());
+    }
+}
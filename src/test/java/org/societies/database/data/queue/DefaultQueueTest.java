@@ -0,0 +1,470 @@
+package org.societies.database.data.queue;
+
+
+import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.jooq.tools.jdbc.MockDataProvider;
+import org.jooq.tools.jdbc.MockExecuteContext;
+import org.jooq.tools.jdbc.MockResult;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.societies.database.BindSink;
+import org.societies.database.CachedQuery;
+import org.societies.database.DSLProvider;
+import org.societies.database.DatabaseMock;
+import org.societies.database.QueryKey;
+import org.societies.database.QueryProvider;
+import org.societies.database.data.metrics.JmxMetrics;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents a DefaultQueueTest
+ */
+@RunWith(JUnit4.class)
+public class DefaultQueueTest {
+
+    private final List<Object> executed = Collections.synchronizedList(new ArrayList<Object>());
+    private Object failing;
+
+    private DSLContext dslContext = DatabaseMock.mockedDSLContext(new MockDataProvider() {
+        @Override
+        public MockResult[] execute(MockExecuteContext ctx) throws SQLException {
+            for (Object[] bindings : ctx.batchBindings()) {
+                if (bindings[0].equals(failing)) {
+                    throw new SQLException("Failed to execute " + failing);
+                }
+
+                executed.add(bindings[0]);
+            }
+            return new MockResult[0];
+        }
+    });
+
+    private final QueryKey<Query> TEST_KEY = new QueryKey<Query>();
+
+    private final QueryProvider provider = new QueryProvider(new DSLProvider() {
+        @Override
+        public DSLContext getDSLContext() {
+            return dslContext;
+        }
+    }) {
+        @Override
+        public void build() {
+            builder(TEST_KEY, new QueryBuilder<Query>() {
+                @Override
+                public Query create(DSLContext context) {
+                    return context.query("UPDATE societies SET name = ?", DEFAULT_STRING);
+                }
+            });
+        }
+    };
+
+    @Test
+    public void testCoalescing() {
+        Capacity capacity = Capacity.unbounded();
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50, capacity);
+        JmxMetrics metrics = new JmxMetrics();
+        queue.setMetrics(metrics);
+
+        String[] rows = {"a", "b", "a", "c", "b", "a"};
+
+        for (int i = 0; i < rows.length; i++) {
+            Data data = new TestData(rows[i], rows[i] + i);
+            capacity.acquire(data);
+            queue.publishBatch(data);
+        }
+
+        Assert.assertEquals(3, capacity.getEntries());
+        Assert.assertEquals(3, metrics.getPending());
+        Assert.assertEquals(3, metrics.getReplaced());
+
+        queue.flushAll();
+        queue.execute(dslContext);
+
+        Assert.assertEquals(0, metrics.getPending());
+        Assert.assertEquals(3, metrics.getBatchSizeMax());
+        Assert.assertEquals(1L, (long) metrics.getFlushes().get("STOP"));
+        Assert.assertEquals(3, executed.size());
+        Assert.assertEquals("a5", executed.get(0));
+        Assert.assertEquals("b4", executed.get(1));
+        Assert.assertEquals("c3", executed.get(2));
+        Assert.assertEquals(0, capacity.getEntries());
+    }
+
+    @Test
+    public void testCoalescedAcknowledgement() {
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50);
+        queue.setRetryPolicy(new RetryPolicy(1, 1, 1, TimeUnit.MILLISECONDS));
+
+        DataFuture[] futures = new DataFuture[3];
+
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = new DataFuture();
+            queue.publishBatch(new TrackedData(new TestData("a", "a" + i), futures[i]));
+        }
+
+        queue.flushAll();
+        queue.execute(dslContext);
+
+        Assert.assertEquals(Arrays.<Object>asList("a2"), executed);
+
+        for (DataFuture future : futures) {
+            Assert.assertTrue(future.isDone());
+        }
+
+        // An untracked replacement reports its real outcome to the replaced data
+        DataFuture replaced = new DataFuture();
+        queue.publishBatch(new TrackedData(new TestData("b", "b0"), replaced));
+        queue.publishBatch(new TestData("b", "b1"));
+
+        Assert.assertFalse(replaced.isDone());
+
+        failing = "b1";
+        queue.flushAll();
+
+        try {
+            queue.execute(dslContext);
+            Assert.fail();
+        } catch (DataException ignored) {
+        }
+
+        try {
+            replaced.get();
+            Assert.fail();
+        } catch (ExecutionException ignored) {
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    public void testTrackedBoundData() {
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50);
+        BoundTestData data = new BoundTestData("a");
+        DataFuture future = new DataFuture();
+
+        queue.publishBatch(new TrackedData(data, future));
+        queue.flushAll();
+        queue.execute(dslContext);
+
+        // The tracked data is bound directly, without a row of objects
+        Assert.assertEquals(Arrays.<Object>asList("a"), executed);
+        Assert.assertEquals(0, data.executions);
+        Assert.assertTrue(future.isDone());
+    }
+
+    @Test
+    public void testConfigureBeforeStart() {
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50);
+        queue.setLane(TEST_KEY, Lane.HIGH);
+        queue.start();
+
+        try {
+            queue.setLane(TEST_KEY, Lane.LOW);
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+
+        Assert.assertEquals(Lane.HIGH, queue.getLane(TEST_KEY));
+    }
+
+    @Test
+    public void testTransactionRollback() {
+        Capacity capacity = Capacity.unbounded();
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50, capacity);
+        queue.setTransactionLimits(2, 0);
+
+        String[] rows = {"a", "b", "c"};
+
+        for (String row : rows) {
+            Data data = new TestData(row, row);
+            capacity.acquire(data);
+            queue.publishSingle(data);
+        }
+
+        failing = "b";
+
+        try {
+            queue.execute(dslContext);
+            Assert.fail();
+        } catch (DataException ignored) {
+        }
+
+        // The first transaction was rolled back, the healthy entries were committed in the next one
+        Assert.assertEquals("c", executed.get(executed.size() - 1));
+        Assert.assertEquals(1, capacity.getEntries());
+
+        // The failing entry backs off instead of being retried immediately
+        Assert.assertFalse(queue.isReady());
+        Assert.assertTrue(queue.getNextDeadline() < Long.MAX_VALUE);
+
+        failing = null;
+        executed.clear();
+        awaitRetry(queue);
+        queue.execute(dslContext);
+
+        Assert.assertEquals(1, executed.size());
+        Assert.assertEquals("b", executed.get(0));
+        Assert.assertFalse(queue.isReady());
+        Assert.assertEquals(0, capacity.getEntries());
+    }
+
+    @Test
+    public void testRollbackCoalescing() {
+        Capacity capacity = Capacity.unbounded();
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50, capacity);
+        queue.setRetryPolicy(new RetryPolicy(1, 1, 0, TimeUnit.MILLISECONDS));
+
+        String[] rows = {"a", "b"};
+
+        for (String row : rows) {
+            Data data = new TestData(row, row + 0);
+            capacity.acquire(data);
+            queue.publishBatch(data);
+        }
+
+        failing = "b0";
+        queue.flushAll();
+
+        try {
+            queue.execute(dslContext);
+            Assert.fail();
+        } catch (DataException ignored) {
+        }
+
+        // The requeued data is still replaced by later data of its coalescing key
+        Data data = new TestData("a", "a1");
+        capacity.acquire(data);
+        queue.publishBatch(data);
+
+        Assert.assertEquals(2, capacity.getEntries());
+
+        failing = null;
+        executed.clear();
+        awaitRetry(queue);
+        queue.flushAll();
+        queue.execute(dslContext);
+
+        Assert.assertEquals(Arrays.<Object>asList("a1", "b0"), executed);
+        Assert.assertEquals(0, capacity.getEntries());
+    }
+
+    @Test
+    public void testQuarantine() {
+        Capacity capacity = Capacity.unbounded();
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50, capacity);
+        queue.setRetryPolicy(new RetryPolicy(1, 1, 2, TimeUnit.MILLISECONDS));
+
+        String[] rows = {"a", "b", "c", "d", "e"};
+
+        for (String row : rows) {
+            Data data = new TestData(row, row);
+            capacity.acquire(data);
+            queue.publishBatch(data);
+        }
+
+        failing = "c";
+        queue.flushAll();
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                queue.execute(dslContext);
+                Assert.fail();
+            } catch (DataException ignored) {
+            }
+
+            awaitRetry(queue);
+        }
+
+        // The batch was split until only the failing row was left
+        Assert.assertEquals(1, queue.getQuarantine().size());
+        Assert.assertEquals("c", queue.getQuarantine().getEntries().get(0).getData().execute()[0]);
+        Assert.assertEquals(0, capacity.getEntries());
+        Assert.assertTrue(executed.containsAll(Arrays.asList("a", "b", "d", "e")));
+    }
+
+    private static void awaitRetry(DefaultQueue queue) {
+        long deadline = queue.getNextDeadline();
+
+        if (deadline == Long.MAX_VALUE) {
+            return;
+        }
+
+        try {
+            Thread.sleep(Math.max(0, deadline - System.currentTimeMillis()) + 1);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+
+        queue.flushReady();
+    }
+
+    @Test
+    public void testParallelChunks() {
+        Capacity capacity = Capacity.unbounded();
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50, capacity);
+        queue.setRetryPolicy(new RetryPolicy(1, 1, 0, TimeUnit.MILLISECONDS));
+        queue.setParallelChunking(2, 3);
+        queue.setParallel(TEST_KEY);
+        JmxMetrics metrics = new JmxMetrics();
+        queue.setMetrics(metrics);
+
+        String[] rows = {"a", "b", "c", "d", "e", "f", "g"};
+
+        for (String row : rows) {
+            Data data = new TestData(row, row);
+            capacity.acquire(data);
+            queue.publishBatch(data);
+        }
+
+        failing = "d";
+        queue.flushAll();
+
+        try {
+            queue.execute(dslContext);
+            Assert.fail();
+        } catch (DataException ignored) {
+        }
+
+        // Only the chunk of the failing row is requeued, the committed chunks are recorded
+        Assert.assertTrue(executed.containsAll(Arrays.asList("a", "b", "e", "f", "g")));
+        Assert.assertEquals(2, capacity.getEntries());
+        Assert.assertEquals(2, metrics.getPending());
+
+        failing = null;
+        executed.clear();
+        awaitRetry(queue);
+        queue.execute(dslContext);
+
+        Assert.assertEquals(Arrays.<Object>asList("c", "d"), executed);
+        Assert.assertEquals(0, capacity.getEntries());
+        Assert.assertEquals(0, metrics.getPending());
+    }
+
+    @Test
+    public void testLanes() {
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50);
+        JmxMetrics metrics = new JmxMetrics();
+        queue.setMetrics(metrics);
+        queue.setLaneWeights(2, 1, 1);
+        queue.setLane(TEST_KEY, Lane.LOW);
+
+        queue.publishBatch(new TestData("a", "a"));
+        queue.publishBatch(new TestData("b", "b"));
+        queue.flushAll();
+
+        for (int i = 0; i < 3; i++) {
+            queue.publishSingle(new PrioritizedTestData("single" + i, 1));
+        }
+
+        queue.execute(dslContext);
+
+        // The single writes overtake the bulk batch, which still gets its turn once the high lane used its weight
+        Assert.assertEquals(Arrays.<Object>asList("single0", "single1", "a", "b", "single2"), executed);
+        Assert.assertEquals(3, metrics.getCommitLatencies(Lane.HIGH).getCount());
+        Assert.assertEquals(1, metrics.getCommitLatencies(Lane.LOW).getCount());
+    }
+
+    @Test
+    public void testAdaptiveBatching() {
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 40);
+        queue.setAdaptiveBatching(4, 0, 10, TimeUnit.MILLISECONDS);
+
+        // Every row takes a millisecond
+        queue.setBatchStrategy(new BatchStrategy() {
+            @Override
+            public void execute(DSLContext context, CachedQuery query, List<Object[]> rows) {
+                try {
+                    Thread.sleep(rows.size());
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+
+        for (int i = 0; i < 200; i++) {
+            queue.publishBatch(new TestData("row" + i, "value"));
+            queue.execute(dslContext);
+        }
+
+        int size = queue.getBatchEntry(TEST_KEY).getCriticalSize();
+
+        Assert.assertTrue("The batch size did not shrink: " + size, size < 20);
+        Assert.assertTrue(size >= 4);
+    }
+
+    private class PrioritizedTestData extends TestData implements PrioritizedData {
+
+        private final int priority;
+
+        private PrioritizedTestData(String value, int priority) {
+            super(value, value);
+            this.priority = priority;
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+    }
+
+    private class BoundTestData extends TestData implements BoundData {
+
+        private int executions;
+
+        private BoundTestData(String value) {
+            super(value, value);
+        }
+
+        @Override
+        public void bind(BindSink sink) {
+            sink.setString(value);
+        }
+
+        @Override
+        public Object[] execute() {
+            executions++;
+            return super.execute();
+        }
+    }
+
+    private class TestData implements CoalescingData {
+
+        private final String row;
+        protected final String value;
+
+        private TestData(String row, String value) {
+            this.row = row;
+            this.value = value;
+        }
+
+        @Override
+        public Object getCoalescingKey() {
+            return row;
+        }
+
+        @Override
+        public QueryProvider getQueryProvider() {
+            return provider;
+        }
+
+        @Override
+        public QueryKey getQueryKey() {
+            return TEST_KEY;
+        }
+
+        @Override
+        public Object[] execute() {
+            return new Object[]{value};
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package org.societies.database.data.queue;
+
+
+import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.jooq.tools.jdbc.MockDataProvider;
+import org.jooq.tools.jdbc.MockExecuteContext;
+import org.jooq.tools.jdbc.MockResult;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.societies.database.BindSink;
+import org.societies.database.DSLProvider;
+import org.societies.database.DatabaseMock;
+import org.societies.database.QueryKey;
+import org.societies.database.QueryProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents a JournalTest
+ */
+@RunWith(JUnit4.class)
+public class JournalTest {
+
+    public static final int TRIES = 100;
+
+    private final List<Object[]> executed = Collections.synchronizedList(new ArrayList<Object[]>());
+    private volatile Object failing;
+
+    private DSLContext dslContext = DatabaseMock.mockedDSLContext(new MockDataProvider() {
+        @Override
+        public MockResult[] execute(MockExecuteContext ctx) throws SQLException {
+            for (Object[] bindings : ctx.batchBindings()) {
+                if (bindings[1].equals(failing)) {
+                    throw new SQLException("Failed to execute " + failing);
+                }
+
+                executed.add(bindings);
+            }
+            return new MockResult[0];
+        }
+    });
+
+    private final QueryKey<Query> TEST_KEY = new QueryKey<Query>();
+
+    private final QueryProvider provider = new QueryProvider(new DSLProvider() {
+        @Override
+        public DSLContext getDSLContext() {
+            return dslContext;
+        }
+    }) {
+        @Override
+        public void build() {
+            builder(TEST_KEY, new QueryBuilder<Query>() {
+                @Override
+                public Query create(DSLContext context) {
+                    return context.query("INSERT INTO societies VALUES (?, ?, ?)", DEFAULT_STRING, 0, DEFAULT_STRING);
+                }
+            });
+        }
+    };
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("journal", "");
+        Assert.assertTrue(directory.delete());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        Journal journal = open();
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50);
+        queue.setJournal(journal);
+
+        for (int i = 0; i < TRIES; i++) {
+            queue.publishBatch(newData(i));
+        }
+
+        // Crash before anything was executed
+        journal.close();
+
+        journal = open();
+        Assert.assertEquals(TRIES, journal.getRecovered());
+
+        queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50);
+        queue.setJournal(journal);
+
+        Assert.assertEquals(TRIES, journal.replay(queue));
+
+        queue.flushAll();
+        queue.execute(dslContext);
+
+        Assert.assertEquals(TRIES, executed.size());
+
+        for (int i = 0; i < TRIES; i++) {
+            Assert.assertEquals(i, executed.get(i)[1]);
+        }
+
+        journal.close();
+
+        // Everything was committed, so nothing is recovered anymore
+        journal = open();
+        Assert.assertEquals(0, journal.getRecovered());
+        journal.close();
+    }
+
+    @Test
+    public void testBoundReplay() throws IOException {
+        Journal journal = open();
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50);
+        queue.setJournal(journal);
+
+        final int[] executions = new int[1];
+
+        for (int i = 0; i < TRIES; i++) {
+            final String name = UUID.randomUUID().toString();
+            final int rank = i;
+
+            Data data = new BoundData() {
+                @Override
+                public void bind(BindSink sink) {
+                    sink.setString(name);
+                    sink.setInt(rank);
+                    sink.setNull();
+                }
+
+                @Override
+                public QueryProvider getQueryProvider() {
+                    return provider;
+                }
+
+                @Override
+                public QueryKey getQueryKey() {
+                    return TEST_KEY;
+                }
+
+                @Override
+                public Object[] execute() {
+                    executions[0]++;
+                    return new Object[]{name, rank, null};
+                }
+            };
+
+            queue.publishBatch(i % 2 == 0 ? data : new TrackedData(data, DataCallback.NONE));
+        }
+
+        // The bound values were written without executing the data, across several segments
+        Assert.assertEquals(0, executions[0]);
+        Assert.assertEquals(0, journal.getUnjournaled());
+
+        journal.close();
+
+        journal = open();
+        Assert.assertEquals(TRIES, journal.getRecovered());
+
+        queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50);
+        queue.setJournal(journal);
+        journal.replay(queue);
+
+        queue.flushAll();
+        queue.execute(dslContext);
+
+        Assert.assertEquals(TRIES, executed.size());
+
+        for (int i = 0; i < TRIES; i++) {
+            Assert.assertEquals(i, executed.get(i)[1]);
+            Assert.assertNull(executed.get(i)[2]);
+        }
+
+        journal.close();
+    }
+
+    @Test
+    public void testChunkedRelease() throws IOException {
+        Journal journal = open();
+        DefaultQueue queue = new DefaultQueue(5, 5, TimeUnit.MINUTES, 50);
+        queue.setJournal(journal);
+        queue.setParallelChunking(2, 3);
+        queue.setParallel(TEST_KEY);
+
+        for (int i = 0; i < 7; i++) {
+            queue.publishBatch(newData(i));
+        }
+
+        failing = 3;
+        queue.flushAll();
+
+        try {
+            queue.execute(dslContext);
+            Assert.fail();
+        } catch (DataException ignored) {
+        }
+
+        // Crash after some chunks were committed, only the failed chunk is recovered
+        journal.close();
+
+        journal = open();
+        Assert.assertEquals(2, journal.getRecovered());
+        journal.close();
+    }
+
+    private Data newData(int rank) {
+        final Object[] values = {UUID.randomUUID().toString(), rank, null};
+
+        return new Data() {
+            @Override
+            public QueryProvider getQueryProvider() {
+                return provider;
+            }
+
+            @Override
+            public QueryKey getQueryKey() {
+                return TEST_KEY;
+            }
+
+            @Override
+            public Object[] execute() {
+                return values;
+            }
+        };
+    }
+
+    private Journal open() throws IOException {
+        Journal journal = new Journal(directory, 4, 4096, -1, TimeUnit.MILLISECONDS);
+        journal.register(1, TEST_KEY, provider);
+        return journal;
+    }
+}
@@ -0,0 +1,63 @@
+package org.societies.database.data.queue;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Represents a RingBufferTest
+ */
+@RunWith(JUnit4.class)
+public class RingBufferTest {
+
+    @Test
+    public void testWrapAround() {
+        RingBuffer<Integer> buffer = new RingBuffer<Integer>(4);
+
+        // Move the head, so the elements wrap around while growing
+        buffer.offer(-1);
+        buffer.offer(-2);
+        buffer.poll();
+        buffer.poll();
+
+        for (int i = 0; i < 10; i++) {
+            buffer.offer(i);
+        }
+
+        buffer.addAllFirst(Arrays.asList(-2, -1));
+
+        Assert.assertTrue(buffer.remove(5));
+        Assert.assertEquals(11, buffer.size());
+
+        List<Integer> drained = new ArrayList<Integer>();
+        buffer.drainTo(drained);
+
+        Assert.assertEquals(Arrays.asList(-2, -1, 0, 1, 2, 3, 4, 6, 7, 8, 9), drained);
+        Assert.assertTrue(buffer.isEmpty());
+        Assert.assertNull(buffer.poll());
+    }
+
+    @Test
+    public void testReuse() {
+        RingBuffer<Integer> buffer = new RingBuffer<Integer>();
+        List<Integer> drained = new ArrayList<Integer>();
+
+        for (int cycle = 0; cycle < 3; cycle++) {
+            for (int i = 0; i < 100; i++) {
+                buffer.offer(i);
+            }
+
+            drained.clear();
+            buffer.drainTo(drained);
+        }
+
+        // The capacity is kept across cycles
+        Assert.assertEquals(128, buffer.capacity());
+        Assert.assertEquals(100, drained.size());
+    }
+}